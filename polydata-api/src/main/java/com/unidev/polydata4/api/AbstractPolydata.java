@@ -4,7 +4,9 @@ import com.unidev.polydata4.domain.BasicPoly;
 
 import javax.cache.Cache;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Common polydata handling logic
@@ -13,6 +15,8 @@ public abstract class AbstractPolydata implements Polydata {
 
     protected Optional<Cache<String, BasicPoly>> cache = Optional.empty();
 
+    protected final NearCache nearCache = new NearCache();
+
     @Override
     public void setCache(Cache<String, BasicPoly> cache) {
         this.cache = Optional.ofNullable(cache);
@@ -29,4 +33,23 @@ public abstract class AbstractPolydata implements Polydata {
         cache.ifPresent(entries -> entries.put(key, poly));
     }
 
+    /**
+     * Near-cache of dataset config, metadata and existence, with hit and miss counters.
+     */
+    public NearCache nearCache() {
+        return nearCache;
+    }
+
+    protected Optional<BasicPoly> cachedConfig(String dataset, Supplier<Optional<BasicPoly>> loader) {
+        return nearCache.get(NearCache.Kind.CONFIG, dataset, loader, Optional::isPresent, NearCache::copy);
+    }
+
+    protected Optional<BasicPoly> cachedMetadata(String dataset, Supplier<Optional<BasicPoly>> loader) {
+        return nearCache.get(NearCache.Kind.METADATA, dataset, loader, Optional::isPresent, NearCache::copy);
+    }
+
+    protected boolean cachedExists(String dataset, BooleanSupplier loader) {
+        return nearCache.get(NearCache.Kind.EXISTS, dataset, loader::getAsBoolean, Boolean::booleanValue);
+    }
+
 }
@@ -0,0 +1,73 @@
+package com.unidev.polydata4.api;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors of blocking storage calls for {@link ExecutorAsyncPolydata}.
+ * Virtual threads are used on JDK 21 and newer, older runtimes get a fixed pool of daemon platform threads.
+ */
+@Slf4j
+public final class AsyncExecutors {
+
+    public static final int DEFAULT_THREADS = 32;
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * True when runtime provides virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Thread per task executor of virtual threads, platform pool of given size when virtual threads are not available.
+     */
+    public static ExecutorService virtual(int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            log.debug("Virtual threads are not available, using {} platform threads", fallbackThreads);
+            return platform(fallbackThreads);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Fixed pool of daemon platform threads named "polydata-async-N".
+     */
+    public static ExecutorService platform(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "polydata-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Executor by config name, "virtual" or "platform".
+     */
+    public static ExecutorService of(String name, int threads) {
+        switch (name.trim().toLowerCase()) {
+            case "virtual":
+                return virtual(threads);
+            case "platform":
+                return platform(threads);
+            default:
+                throw new IllegalArgumentException("Unknown executor " + name);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.unidev.polydata4.api;
+
+import com.unidev.polydata4.domain.*;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking flavor of {@link Polydata}, operations complete their futures when storage responds.
+ * Storage errors complete futures exceptionally.
+ */
+public interface AsyncPolydata extends Closeable {
+
+    /**
+     * Blocking storage behind this instance, for setup and operations without async counterpart.
+     */
+    Polydata sync();
+
+    CompletableFuture<BasicPoly> create(String dataset);
+
+    CompletableFuture<Boolean> exists(String dataset);
+
+    CompletableFuture<Optional<BasicPoly>> config(String dataset);
+
+    CompletableFuture<Void> config(String dataset, BasicPoly config);
+
+    CompletableFuture<Optional<BasicPoly>> metadata(String dataset);
+
+    CompletableFuture<Void> metadata(String dataset, BasicPoly metadata);
+
+    CompletableFuture<Optional<BasicPoly>> index(String dataset);
+
+    CompletableFuture<Optional<BasicPoly>> indexData(String dataset, String indexId);
+
+    CompletableFuture<BasicPolyList> insert(String dataset, InsertOptions insertOptions, Collection<InsertRequest> insertRequests);
+
+    CompletableFuture<BasicPolyList> insert(String dataset, Collection<InsertRequest> insertRequests);
+
+    CompletableFuture<BasicPolyList> update(String dataset, Collection<InsertRequest> insertRequests);
+
+    CompletableFuture<BasicPolyList> read(String dataset, Set<String> ids);
+
+    CompletableFuture<BasicPolyList> remove(String dataset, Set<String> ids);
+
+    CompletableFuture<BasicPolyList> query(String dataset, PolyQuery polyQuery);
+
+    CompletableFuture<Long> count(String dataset, PolyQuery polyQuery);
+
+    /**
+     * Pass all polys of dataset to consumer in storage order, future completes with number of polys after the scan.
+     */
+    CompletableFuture<Long> forEach(String dataset, int fetchSize, Consumer<BasicPoly> consumer);
+
+    CompletableFuture<BasicPolyList> list();
+
+}
@@ -0,0 +1,164 @@
+package com.unidev.polydata4.api;
+
+import com.unidev.polydata4.domain.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * {@link AsyncPolydata} which runs blocking storage calls on executor.
+ * Executor service created for this instance is shut down on close, shared executors are left running.
+ */
+@Slf4j
+public class ExecutorAsyncPolydata implements AsyncPolydata {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Polydata polydata;
+    private final Executor executor;
+    private final boolean ownExecutor;
+
+    public ExecutorAsyncPolydata(Polydata polydata, Executor executor, boolean ownExecutor) {
+        this.polydata = polydata;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * Async storage on own executor, see {@link AsyncExecutors#virtual(int)}.
+     */
+    public ExecutorAsyncPolydata(Polydata polydata) {
+        this(polydata, AsyncExecutors.virtual(AsyncExecutors.DEFAULT_THREADS), true);
+    }
+
+    @Override
+    public Polydata sync() {
+        return polydata;
+    }
+
+    @Override
+    public CompletableFuture<BasicPoly> create(String dataset) {
+        return CompletableFuture.supplyAsync(() -> polydata.create(dataset), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String dataset) {
+        return CompletableFuture.supplyAsync(() -> polydata.exists(dataset), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> config(String dataset) {
+        return CompletableFuture.supplyAsync(() -> polydata.config(dataset), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> config(String dataset, BasicPoly config) {
+        return CompletableFuture.runAsync(() -> polydata.config(dataset, config), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> metadata(String dataset) {
+        return CompletableFuture.supplyAsync(() -> polydata.metadata(dataset), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> metadata(String dataset, BasicPoly metadata) {
+        return CompletableFuture.runAsync(() -> polydata.metadata(dataset, metadata), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> index(String dataset) {
+        return CompletableFuture.supplyAsync(() -> polydata.index(dataset), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> indexData(String dataset, String indexId) {
+        return CompletableFuture.supplyAsync(() -> polydata.indexData(dataset, indexId), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> insert(String dataset, InsertOptions insertOptions, Collection<InsertRequest> insertRequests) {
+        return CompletableFuture.supplyAsync(() -> polydata.insert(dataset, insertOptions, insertRequests), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> insert(String dataset, Collection<InsertRequest> insertRequests) {
+        return CompletableFuture.supplyAsync(() -> polydata.insert(dataset, insertRequests), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> update(String dataset, Collection<InsertRequest> insertRequests) {
+        return CompletableFuture.supplyAsync(() -> polydata.update(dataset, insertRequests), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> read(String dataset, Set<String> ids) {
+        return CompletableFuture.supplyAsync(() -> polydata.read(dataset, ids), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> remove(String dataset, Set<String> ids) {
+        return CompletableFuture.supplyAsync(() -> polydata.remove(dataset, ids), executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> query(String dataset, PolyQuery polyQuery) {
+        return CompletableFuture.supplyAsync(() -> polydata.query(dataset, polyQuery), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(String dataset, PolyQuery polyQuery) {
+        return CompletableFuture.supplyAsync(() -> polydata.count(dataset, polyQuery), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> forEach(String dataset, int fetchSize, Consumer<BasicPoly> consumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            AtomicLong count = new AtomicLong();
+            try (Stream<BasicPoly> polys = polydata.stream(dataset, fetchSize)) {
+                polys.forEach(poly -> {
+                    consumer.accept(poly);
+                    count.incrementAndGet();
+                });
+            }
+            return count.get();
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> list() {
+        return CompletableFuture.supplyAsync(polydata::list, executor);
+    }
+
+    /**
+     * Close storage, own executor is shut down after running calls are finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownExecutor && executor instanceof ExecutorService) {
+            ExecutorService executorService = (ExecutorService) executor;
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Async calls didn't finish in {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+                    executorService.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executorService.shutdownNow();
+            }
+        }
+        polydata.close();
+    }
+
+}
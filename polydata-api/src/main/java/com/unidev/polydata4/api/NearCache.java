@@ -0,0 +1,184 @@
+package com.unidev.polydata4.api;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-process cache of dataset config, metadata and existence, independent of JCache set on storage.
+ * Entries expire after TTL and are dropped on writes of the same instance, absent values are not cached,
+ * so datasets created by other instances are seen on the next lookup.
+ * Values loaded before a write of the same dataset are not cached, each dataset has generation which writes increment.
+ * Mutable values are copied on the way in and out, callers can't change cached values.
+ * Hits and misses are counted per kind of entry.
+ */
+public class NearCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 60_000;
+
+    public enum Kind {
+        CONFIG, METADATA, EXISTS
+    }
+
+    /**
+     * Time to live of entries, 0 or less disables cache.
+     */
+    @Getter
+    @Setter
+    private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> hits = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> misses = new EnumMap<>(Kind.class);
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public NearCache() {
+        for (Kind kind : Kind.values()) {
+            entries.put(kind, new ConcurrentHashMap<>());
+            hits.put(kind, new LongAdder());
+            misses.put(kind, new LongAdder());
+        }
+    }
+
+    /**
+     * Cached immutable value of dataset, loaded when missing or expired. Loaded value is cached when it is present.
+     */
+    public <T> T get(Kind kind, String dataset, Supplier<T> loader, Predicate<T> present) {
+        return get(kind, dataset, loader, present, UnaryOperator.identity());
+    }
+
+    /**
+     * Cached value of dataset, loaded when missing or expired. Loaded value is cached when it is present
+     * and no write of dataset happened during load. Copy of value is cached and each hit returns new copy.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Kind kind, String dataset, Supplier<T> loader, Predicate<T> present, UnaryOperator<T> copy) {
+        long ttl = ttlMillis;
+        if (ttl <= 0) {
+            return loader.get();
+        }
+        Entry entry = entries.get(kind).get(dataset);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expires > now) {
+            hits.get(kind).increment();
+            return copy.apply((T) entry.value);
+        }
+        misses.get(kind).increment();
+        AtomicLong generation = generation(dataset);
+        long loadedGeneration = generation.get();
+        T value = loader.get();
+        store(kind, dataset, value, present, copy, generation, loadedGeneration, now + ttl);
+        return value;
+    }
+
+    /**
+     * Same as {@link #get(Kind, String, Supplier, Predicate, UnaryOperator)} for loaders which complete later,
+     * hits return completed future and loaded value is cached when loader completes.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(Kind kind, String dataset, Supplier<CompletableFuture<T>> loader,
+                                             Predicate<T> present, UnaryOperator<T> copy) {
+        long ttl = ttlMillis;
+        if (ttl <= 0) {
+            return loader.get();
+        }
+        Entry entry = entries.get(kind).get(dataset);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expires > now) {
+            hits.get(kind).increment();
+            return CompletableFuture.completedFuture(copy.apply((T) entry.value));
+        }
+        misses.get(kind).increment();
+        AtomicLong generation = generation(dataset);
+        long loadedGeneration = generation.get();
+        return loader.get().thenApply(value -> {
+            store(kind, dataset, value, present, copy, generation, loadedGeneration, now + ttl);
+            return value;
+        });
+    }
+
+    private <T> void store(Kind kind, String dataset, T value, Predicate<T> present, UnaryOperator<T> copy,
+                           AtomicLong generation, long loadedGeneration, long expires) {
+        if (present.test(value)) {
+            Entry loaded = new Entry(copy.apply(value), expires);
+            // invalidation increments generation before removing entry, so stale value is either skipped here or removed after
+            entries.get(kind).compute(dataset, (key, previous) -> generation.get() == loadedGeneration ? loaded : previous);
+        }
+    }
+
+    /**
+     * Drop entry of dataset, loads of dataset in progress are not cached.
+     */
+    public void invalidate(Kind kind, String dataset) {
+        generation(dataset).incrementAndGet();
+        entries.get(kind).remove(dataset);
+    }
+
+    /**
+     * Drop all entries of dataset, loads of dataset in progress are not cached.
+     */
+    public void invalidate(String dataset) {
+        generation(dataset).incrementAndGet();
+        entries.values().forEach(values -> values.remove(dataset));
+    }
+
+    public void clear() {
+        generations.values().forEach(AtomicLong::incrementAndGet);
+        entries.values().forEach(Map::clear);
+    }
+
+    /**
+     * Shallow copy of poly, for values of {@link #get(Kind, String, Supplier, Predicate, UnaryOperator)}.
+     */
+    public static Optional<BasicPoly> copy(Optional<BasicPoly> poly) {
+        return poly.map(BasicPoly::new);
+    }
+
+    private AtomicLong generation(String dataset) {
+        return generations.computeIfAbsent(dataset, key -> new AtomicLong());
+    }
+
+    public long hits(Kind kind) {
+        return hits.get(kind).sum();
+    }
+
+    public long misses(Kind kind) {
+        return misses.get(kind).sum();
+    }
+
+    /**
+     * Counters by name, e.g. "config.hits" and "config.misses".
+     */
+    public Map<String, Long> counters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (Kind kind : Kind.values()) {
+            String name = kind.name().toLowerCase();
+            counters.put(name + ".hits", hits(kind));
+            counters.put(name + ".misses", misses(kind));
+        }
+        return counters;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Storage interface for polydata records.
@@ -21,6 +22,8 @@ public interface Polydata extends Closeable {
 
     int DEFAULT_ITEM_PER_PAGE = 10;
 
+    int DEFAULT_FETCH_SIZE = 100;
+
     String CONFIG_KEY = "config";
     String METADATA_KEY = "metadata";
 
@@ -82,6 +85,16 @@ public interface Polydata extends Closeable {
 
     Long count(String dataset, PolyQuery polyQuery);
 
+    /**
+     * Stream all polys of dataset in storage order, polys are fetched in chunks of fetchSize.
+     * Returned stream holds storage resources and must be closed, preferably in try-with-resources.
+     */
+    Stream<BasicPoly> stream(String dataset, int fetchSize);
+
+    default Stream<BasicPoly> stream(String dataset) {
+        return stream(dataset, DEFAULT_FETCH_SIZE);
+    }
+
     /**
      * List available polys
      */
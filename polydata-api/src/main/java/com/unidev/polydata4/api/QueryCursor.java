@@ -0,0 +1,50 @@
+package com.unidev.polydata4.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Position of last returned poly in keyset paging: sort value of the index and poly id.
+ * Passed to clients as opaque token, see {@link com.unidev.polydata4.domain.BasicPolyQuery#cursor()}.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class QueryCursor {
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Sort value of last poly, update date or position depending on storage.
+     */
+    private final long value;
+
+    private final String id;
+
+    /**
+     * Parse cursor token, empty token means first page.
+     */
+    public static Optional<QueryCursor> decode(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            return Optional.of(new QueryCursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1)));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid query cursor " + token, e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((value + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
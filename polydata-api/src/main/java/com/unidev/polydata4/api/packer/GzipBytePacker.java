@@ -23,20 +23,11 @@ public class GzipBytePacker implements BytePacker {
     }
 
     public static byte[] gzipUncompress(byte[] compressedData) {
-        byte[] result = new byte[]{};
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(compressedData);
-             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             GZIPInputStream gzipIS = new GZIPInputStream(bis)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = gzipIS.read(buffer)) != -1) {
-                bos.write(buffer, 0, len);
-            }
-            result = bos.toByteArray();
+        try (GZIPInputStream gzipIS = new GZIPInputStream(new ByteArrayInputStream(compressedData))) {
+            return gzipIS.readAllBytes();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
-        return result;
     }
 
     @Override
@@ -2,17 +2,19 @@ package com.unidev.polydata4.api.packer;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.unidev.polydata4.domain.BasicPoly;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -34,25 +36,27 @@ public class GzipPolyPacker implements PolyPacker {
     }
 
     public static byte[] gzipUncompress(byte[] compressedData) {
-        byte[] result = new byte[]{};
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(compressedData);
-             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             GZIPInputStream gzipIS = new GZIPInputStream(bis)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = gzipIS.read(buffer)) != -1) {
-                bos.write(buffer, 0, len);
-            }
-            result = bos.toByteArray();
+        try (GZIPInputStream gzipIS = new GZIPInputStream(new ByteArrayInputStream(compressedData))) {
+            return gzipIS.readAllBytes();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
-        return result;
     }
 
     public byte[] packPoly(BasicPoly poly) throws IOException {
-        String value = objectMapper.writeValueAsString(poly);
-        return gzipCompress(value.getBytes());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        packPoly(poly, bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Gzip stream is closed to release its native deflater, stream of caller is left open.
+     */
+    @Override
+    public void packPoly(BasicPoly poly, OutputStream stream) throws IOException {
+        try (GZIPOutputStream gzipOS = new GZIPOutputStream(new NonClosingOutputStream(stream))) {
+            objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(gzipOS, poly);
+        }
     }
 
     @Getter
@@ -60,7 +64,9 @@ public class GzipPolyPacker implements PolyPacker {
     private ObjectMapper objectMapper = objectMapper();
 
     public BasicPoly unPackPoly(InputStream stream) throws IOException {
-        return objectMapper.readValue(gzipUncompress(IOUtils.toByteArray(stream)), BasicPoly.class);
+        try (GZIPInputStream gzipIS = new GZIPInputStream(stream)) {
+            return objectMapper.readValue(gzipIS, BasicPoly.class);
+        }
     }
 
     protected ObjectMapper objectMapper() {
@@ -72,5 +78,21 @@ public class GzipPolyPacker implements PolyPacker {
         );
     }
 
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
 
 }
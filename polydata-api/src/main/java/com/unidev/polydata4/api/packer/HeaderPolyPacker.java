@@ -0,0 +1,80 @@
+package com.unidev.polydata4.api.packer;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Optional;
+
+/**
+ * Poly packer which prefixes payload with header byte of the codec from {@link PolyPackerRegistry}.
+ * Payloads without known header are passed as is to legacy packer, so data written before header was introduced stays readable.
+ * JSON is written without header: it starts with '{' and is read by legacy packer, also by nodes which don't know headers.
+ */
+public class HeaderPolyPacker implements PolyPacker {
+
+    private final PolyPackerRegistry registry;
+
+    @Getter
+    private final byte codec;
+
+    private final PolyPacker packer;
+
+    /**
+     * Packer for payloads written without header, JSON by default.
+     */
+    @Getter
+    @Setter
+    private PolyPacker legacyPacker = new NoOpPolyPacker();
+
+    public HeaderPolyPacker(PolyPackerRegistry registry, byte codec) {
+        this(registry, codec, registry.packer(codec).orElseThrow(() -> new IllegalArgumentException("Unknown codec " + codec)));
+    }
+
+    /**
+     * Packer which writes with own packer of codec, e.g. with dictionary, registered packer of codec must read its payloads.
+     */
+    public HeaderPolyPacker(PolyPackerRegistry registry, byte codec, PolyPacker packer) {
+        this.registry = registry;
+        this.codec = codec;
+        this.packer = packer;
+    }
+
+    @Override
+    public byte[] packPoly(BasicPoly poly) throws Exception {
+        if (codec == PolyPackerRegistry.JSON) {
+            return packer.packPoly(poly);
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        packPoly(poly, stream);
+        return stream.toByteArray();
+    }
+
+    @Override
+    public void packPoly(BasicPoly poly, OutputStream stream) throws Exception {
+        if (codec != PolyPackerRegistry.JSON) {
+            stream.write(codec);
+        }
+        packer.packPoly(poly, stream);
+    }
+
+    @Override
+    public BasicPoly unPackPoly(InputStream stream) throws Exception {
+        int header = stream.read();
+        if (header == -1) {
+            throw new IOException("Empty poly payload");
+        }
+        Optional<PolyPacker> headerPacker = registry.packer((byte) header);
+        if (headerPacker.isPresent()) {
+            return headerPacker.get().unPackPoly(stream);
+        }
+        return legacyPacker.unPackPoly(new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte) header}), stream));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.unidev.polydata4.api.packer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * LZ4 block compression, much faster than gzip with lower ratio.
+ * Packed bytes are original length as 4 byte little endian int followed by LZ4 block.
+ * Stored length is not trusted: lengths above the best LZ4 ratio of compressed size are rejected
+ * and the block is decompressed with bounds checking.
+ */
+public class Lz4BytePacker implements BytePacker {
+
+    private static final int LENGTH_BYTES = 4;
+
+    /**
+     * LZ4 can't expand a block more than about 255 times.
+     */
+    private static final int MAX_RATIO = 255;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    @Override
+    public byte[] pack(byte[] bytes) {
+        byte[] packed = new byte[LENGTH_BYTES + compressor.maxCompressedLength(bytes.length)];
+        ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length);
+        int length = compressor.compress(bytes, 0, bytes.length, packed, LENGTH_BYTES);
+        byte[] result = new byte[LENGTH_BYTES + length];
+        System.arraycopy(packed, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] unpack(byte[] bytes) {
+        if (bytes.length < LENGTH_BYTES) {
+            throw new RuntimeException("LZ4 payload is too short: " + bytes.length + " bytes");
+        }
+        int length = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        int compressedLength = bytes.length - LENGTH_BYTES;
+        if (length < 0 || length > (long) compressedLength * MAX_RATIO) {
+            throw new RuntimeException("Invalid LZ4 payload length " + length + " of " + compressedLength + " compressed bytes");
+        }
+        byte[] result = new byte[length];
+        try {
+            int decompressed = decompressor.decompress(bytes, LENGTH_BYTES, compressedLength, result, 0, length);
+            if (decompressed != length) {
+                throw new RuntimeException("LZ4 payload has " + decompressed + " bytes instead of " + length);
+            }
+        } catch (LZ4Exception e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+}
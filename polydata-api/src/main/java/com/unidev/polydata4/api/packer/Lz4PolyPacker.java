@@ -0,0 +1,42 @@
+package com.unidev.polydata4.api.packer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Poly packer which stores JSON compressed with LZ4.
+ * Poly is compressed in one shot, frame streams allocate buffers much larger than a single poly.
+ */
+public class Lz4PolyPacker implements PolyPacker {
+
+    private final Lz4BytePacker bytePacker = new Lz4BytePacker();
+
+    @Getter
+    @Setter
+    private ObjectMapper objectMapper = objectMapper();
+
+    public byte[] packPoly(BasicPoly poly) throws IOException {
+        return bytePacker.pack(objectMapper.writeValueAsBytes(poly));
+    }
+
+    public BasicPoly unPackPoly(InputStream stream) throws IOException {
+        return objectMapper.readValue(bytePacker.unpack(stream.readAllBytes()), BasicPoly.class);
+    }
+
+    protected ObjectMapper objectMapper() {
+        return new ObjectMapper(
+                new JsonFactoryBuilder()
+                        .configure(JsonFactory.Feature.INTERN_FIELD_NAMES, false)
+                        .configure(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES, false)
+                        .build()
+        );
+    }
+
+}
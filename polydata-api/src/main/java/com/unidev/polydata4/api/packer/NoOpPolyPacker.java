@@ -2,6 +2,7 @@ package com.unidev.polydata4.api.packer;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.unidev.polydata4.domain.BasicPoly;
 import lombok.Getter;
@@ -11,6 +12,7 @@ import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * No Operation poly packer
@@ -23,6 +25,11 @@ public class NoOpPolyPacker implements PolyPacker {
         return value.getBytes();
     }
 
+    @Override
+    public void packPoly(BasicPoly poly, OutputStream stream) throws IOException {
+        objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(stream, poly);
+    }
+
     public BasicPoly unPackPoly(InputStream stream) throws IOException {
         return objectMapper.readValue(IOUtils.toByteArray(stream), BasicPoly.class);
     }
@@ -3,6 +3,7 @@ package com.unidev.polydata4.api.packer;
 import com.unidev.polydata4.domain.BasicPoly;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Poly packer interface
@@ -11,6 +12,13 @@ public interface PolyPacker {
 
     byte[] packPoly(BasicPoly poly) throws Exception;
 
+    /**
+     * Write packed poly to stream, stream is left open.
+     */
+    default void packPoly(BasicPoly poly, OutputStream stream) throws Exception {
+        stream.write(packPoly(poly));
+    }
+
     BasicPoly unPackPoly(InputStream stream) throws Exception;
 
 }
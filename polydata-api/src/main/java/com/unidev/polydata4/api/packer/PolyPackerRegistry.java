@@ -0,0 +1,78 @@
+package com.unidev.polydata4.api.packer;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Poly packers by name and by header byte written in front of packed payloads.
+ */
+public class PolyPackerRegistry {
+
+    public static final byte JSON = 1;
+    public static final byte SMILE = 2;
+    public static final byte CBOR = 3;
+    public static final byte GZIP_JSON = 4;
+    public static final byte LZ4_JSON = 5;
+    public static final byte ZSTD_JSON = 6;
+
+    private final Map<Byte, PolyPacker> packersById = new ConcurrentHashMap<>();
+    private final Map<String, Byte> idsByName = new ConcurrentHashMap<>();
+
+    /**
+     * Registry with built-in packers: "json", "smile", "cbor", "gzip", "lz4" and "zstd".
+     */
+    public static PolyPackerRegistry defaultRegistry() {
+        PolyPackerRegistry registry = new PolyPackerRegistry();
+        registry.register(JSON, "json", new NoOpPolyPacker());
+        registry.register(SMILE, "smile", new SmilePolyPacker());
+        registry.register(CBOR, "cbor", new CborPolyPacker());
+        registry.register(GZIP_JSON, "gzip", new GzipPolyPacker());
+        registry.register(LZ4_JSON, "lz4", new Lz4PolyPacker());
+        registry.register(ZSTD_JSON, "zstd", new ZstdPolyPacker());
+        return registry;
+    }
+
+    /**
+     * Register packer, header byte must stay the same as long as payloads written with it are stored.
+     * Values from '{' (0x7B) upwards are reserved for payloads without header.
+     */
+    public void register(byte id, String name, PolyPacker packer) {
+        if (id <= 0 || id >= '{') {
+            throw new IllegalArgumentException("Header byte " + id + " is reserved");
+        }
+        packersById.put(id, packer);
+        idsByName.put(name, id);
+    }
+
+    public Optional<PolyPacker> packer(byte id) {
+        return Optional.ofNullable(packersById.get(id));
+    }
+
+    public Optional<Byte> id(String name) {
+        return Optional.ofNullable(idsByName.get(name));
+    }
+
+    /**
+     * Packer which writes Zstd payloads with dictionary, e.g. trained on polys of one dataset.
+     * Dictionary is added to registered "zstd" packer too, frames carry dictionary id, so payloads of all
+     * dictionaries passed here are readable by packers of this registry.
+     */
+    public HeaderPolyPacker zstdPacker(byte[] dictionary) {
+        PolyPacker reader = packersById.get(ZSTD_JSON);
+        if (!(reader instanceof ZstdPolyPacker)) {
+            throw new IllegalStateException("Zstd packer is not registered");
+        }
+        ((ZstdPolyPacker) reader).addDictionary(dictionary);
+        return new HeaderPolyPacker(this, ZSTD_JSON, new ZstdPolyPacker(ZstdBytePacker.DEFAULT_LEVEL, dictionary));
+    }
+
+    /**
+     * Packer which writes payloads with named codec and reads payloads of any registered codec.
+     */
+    public HeaderPolyPacker headerPacker(String name) {
+        byte id = id(name).orElseThrow(() -> new IllegalArgumentException("Unknown poly packer " + name));
+        return new HeaderPolyPacker(this, id);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.unidev.polydata4.api.packer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary poly packer on Jackson Smile format, repeated field names are written as back references.
+ */
+public class SmilePolyPacker implements PolyPacker {
+
+    @Getter
+    @Setter
+    private ObjectMapper objectMapper = objectMapper();
+
+    public byte[] packPoly(BasicPoly poly) throws IOException {
+        return objectMapper.writeValueAsBytes(poly);
+    }
+
+    @Override
+    public void packPoly(BasicPoly poly, OutputStream stream) throws IOException {
+        objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(stream, poly);
+    }
+
+    public BasicPoly unPackPoly(InputStream stream) throws IOException {
+        return objectMapper.readValue(stream, BasicPoly.class);
+    }
+
+    protected ObjectMapper objectMapper() {
+        return new ObjectMapper(new SmileFactory());
+    }
+
+}
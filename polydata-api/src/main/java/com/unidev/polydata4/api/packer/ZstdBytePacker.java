@@ -0,0 +1,81 @@
+package com.unidev.polydata4.api.packer;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zstd compression, optionally with dictionary trained on samples of the same dataset.
+ * Frames name id of dictionary they were written with, payloads are read with any dictionary added by {@link #addDictionary(byte[])}.
+ */
+public class ZstdBytePacker implements BytePacker {
+
+    public static final int DEFAULT_LEVEL = 3;
+
+    private final ZstdDictCompress dictCompress;
+    private final Map<Long, ZstdDictDecompress> dictionaries = new ConcurrentHashMap<>();
+    private final int level;
+
+    public ZstdBytePacker() {
+        this(DEFAULT_LEVEL, null);
+    }
+
+    /**
+     * Packer which compresses with dictionary, null compresses without dictionary.
+     */
+    public ZstdBytePacker(int level, byte[] dictionary) {
+        this.level = level;
+        if (dictionary == null) {
+            dictCompress = null;
+        } else {
+            addDictionary(dictionary);
+            dictCompress = new ZstdDictCompress(dictionary, level);
+        }
+    }
+
+    /**
+     * Add dictionary for reading, dictionaries without id (raw content) can't be told apart in frames and are rejected.
+     *
+     * @return dictionary id
+     */
+    public long addDictionary(byte[] dictionary) {
+        long id = Zstd.getDictIdFromDict(dictionary);
+        if (id == 0) {
+            throw new IllegalArgumentException("Zstd dictionary has no id");
+        }
+        dictionaries.put(id, new ZstdDictDecompress(dictionary));
+        return id;
+    }
+
+    @Override
+    public byte[] pack(byte[] bytes) {
+        if (dictCompress == null) {
+            return Zstd.compress(bytes, level);
+        }
+        return Zstd.compress(bytes, dictCompress);
+    }
+
+    @Override
+    public byte[] unpack(byte[] bytes) {
+        long size = Zstd.decompressedSize(bytes);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new RuntimeException("Invalid Zstd payload, content size " + size);
+        }
+        if (size == 0) {
+            return new byte[0];
+        }
+        long dictionaryId = Zstd.getDictIdFromFrame(bytes);
+        if (dictionaryId == 0) {
+            return Zstd.decompress(bytes, (int) size);
+        }
+        ZstdDictDecompress dictDecompress = dictionaries.get(dictionaryId);
+        if (dictDecompress == null) {
+            throw new RuntimeException("Unknown Zstd dictionary " + dictionaryId);
+        }
+        return Zstd.decompress(bytes, dictDecompress, (int) size);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.unidev.polydata4.api.packer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+/**
+ * Poly packer which stores JSON compressed with Zstd, poly is compressed in one shot with reusable dictionary context.
+ * Small polys compress much better with dictionary trained on polys of the same dataset, see {@link #trainDictionary(Collection, int)}.
+ * Payloads written with dictionary can be read by packers which have the dictionary, see {@link #addDictionary(byte[])}.
+ */
+public class ZstdPolyPacker implements PolyPacker {
+
+    @Getter
+    private final byte[] dictionary;
+
+    private final ZstdBytePacker bytePacker;
+
+    @Getter
+    @Setter
+    private ObjectMapper objectMapper = objectMapper();
+
+    public ZstdPolyPacker() {
+        this(ZstdBytePacker.DEFAULT_LEVEL, null);
+    }
+
+    public ZstdPolyPacker(int level, byte[] dictionary) {
+        this.dictionary = dictionary;
+        this.bytePacker = new ZstdBytePacker(level, dictionary);
+    }
+
+    /**
+     * Add dictionary for reading payloads written with it.
+     *
+     * @return dictionary id
+     */
+    public long addDictionary(byte[] dictionary) {
+        return bytePacker.addDictionary(dictionary);
+    }
+
+    /**
+     * Train dictionary on sample polys serialized with default object mapper.
+     */
+    public static byte[] trainDictionary(Collection<BasicPoly> samples, int dictionarySize) throws IOException {
+        ObjectMapper mapper = new ZstdPolyPacker().getObjectMapper();
+        int sampleSize = 0;
+        byte[][] serialized = new byte[samples.size()][];
+        int i = 0;
+        for (BasicPoly sample : samples) {
+            serialized[i] = mapper.writeValueAsBytes(sample);
+            sampleSize += serialized[i].length;
+            i++;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictionarySize);
+        for (byte[] sample : serialized) {
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+
+    public byte[] packPoly(BasicPoly poly) throws IOException {
+        return bytePacker.pack(objectMapper.writeValueAsBytes(poly));
+    }
+
+    public BasicPoly unPackPoly(InputStream stream) throws IOException {
+        return objectMapper.readValue(bytePacker.unpack(stream.readAllBytes()), BasicPoly.class);
+    }
+
+    protected ObjectMapper objectMapper() {
+        return new ObjectMapper(
+                new JsonFactoryBuilder()
+                        .configure(JsonFactory.Feature.INTERN_FIELD_NAMES, false)
+                        .configure(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES, false)
+                        .build()
+        );
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.unidev.polydata4.api;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearCacheTest {
+
+    @Test
+    void cachedUntilInvalidated() {
+        NearCache nearCache = new NearCache();
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            Optional<BasicPoly> config = nearCache.get(NearCache.Kind.CONFIG, "dataset", () -> {
+                loads.incrementAndGet();
+                return Optional.of(BasicPoly.newPoly("config"));
+            }, Optional::isPresent);
+            assertEquals("config", config.get()._id());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, nearCache.hits(NearCache.Kind.CONFIG));
+        assertEquals(1, nearCache.misses(NearCache.Kind.CONFIG));
+
+        nearCache.invalidate("dataset");
+        nearCache.get(NearCache.Kind.CONFIG, "dataset", () -> {
+            loads.incrementAndGet();
+            return Optional.of(BasicPoly.newPoly("config"));
+        }, Optional::isPresent);
+        assertEquals(2, loads.get());
+        assertEquals(2L, nearCache.counters().get("config.misses"));
+    }
+
+    @Test
+    void absentValuesAreNotCached() {
+        NearCache nearCache = new NearCache();
+        assertFalse(nearCache.get(NearCache.Kind.EXISTS, "dataset", () -> false, Boolean::booleanValue));
+        assertTrue(nearCache.get(NearCache.Kind.EXISTS, "dataset", () -> true, Boolean::booleanValue));
+        assertTrue(nearCache.get(NearCache.Kind.EXISTS, "dataset", () -> false, Boolean::booleanValue));
+        assertEquals(1, nearCache.hits(NearCache.Kind.EXISTS));
+    }
+
+    @Test
+    void loadOverlappingWriteIsNotCached() {
+        NearCache nearCache = new NearCache();
+        AtomicInteger loads = new AtomicInteger();
+        // write of dataset invalidates cache while value read before the write is loaded
+        nearCache.get(NearCache.Kind.CONFIG, "dataset", () -> {
+            loads.incrementAndGet();
+            Optional<BasicPoly> stale = Optional.of(BasicPoly.newPoly("stale"));
+            nearCache.invalidate("dataset");
+            return stale;
+        }, Optional::isPresent, NearCache::copy);
+        Optional<BasicPoly> config = nearCache.get(NearCache.Kind.CONFIG, "dataset", () -> {
+            loads.incrementAndGet();
+            return Optional.of(BasicPoly.newPoly("fresh"));
+        }, Optional::isPresent, NearCache::copy);
+        assertEquals("fresh", config.get()._id());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void asyncLoadIsCachedOnCompletion() {
+        NearCache nearCache = new NearCache();
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        CompletableFuture<Boolean> first = nearCache.getAsync(NearCache.Kind.EXISTS, "dataset", () -> pending, Boolean::booleanValue, UnaryOperator.identity());
+        assertFalse(first.isDone());
+        pending.complete(true);
+        assertTrue(first.join());
+
+        CompletableFuture<Boolean> second = nearCache.getAsync(NearCache.Kind.EXISTS, "dataset", () -> CompletableFuture.completedFuture(false), Boolean::booleanValue, UnaryOperator.identity());
+        assertTrue(second.join());
+        assertEquals(1, nearCache.hits(NearCache.Kind.EXISTS));
+
+        // dataset written while load was in flight
+        nearCache.invalidate("dataset");
+        CompletableFuture<Boolean> stale = new CompletableFuture<>();
+        nearCache.getAsync(NearCache.Kind.EXISTS, "dataset", () -> stale, Boolean::booleanValue, UnaryOperator.identity());
+        nearCache.invalidate("dataset");
+        stale.complete(true);
+        assertFalse(nearCache.getAsync(NearCache.Kind.EXISTS, "dataset", () -> CompletableFuture.completedFuture(false), Boolean::booleanValue, UnaryOperator.identity()).join());
+    }
+
+    @Test
+    void cachedValuesAreCopies() {
+        NearCache nearCache = new NearCache();
+        BasicPoly loaded = BasicPoly.newPoly("config").with("size", 1);
+        nearCache.get(NearCache.Kind.CONFIG, "dataset", () -> Optional.of(loaded), Optional::isPresent, NearCache::copy);
+        loaded.put("size", 2);
+        Optional<BasicPoly> first = nearCache.get(NearCache.Kind.CONFIG, "dataset", Optional::empty, Optional::isPresent, NearCache::copy);
+        first.get().put("size", 3);
+        Optional<BasicPoly> second = nearCache.get(NearCache.Kind.CONFIG, "dataset", Optional::empty, Optional::isPresent, NearCache::copy);
+        assertEquals(1, second.get().fetch("size", 0));
+        assertNotSame(first.get(), second.get());
+    }
+
+    @Test
+    void expiredAndDisabled() throws InterruptedException {
+        NearCache nearCache = new NearCache();
+        nearCache.setTtlMillis(20);
+        AtomicInteger loads = new AtomicInteger();
+        nearCache.get(NearCache.Kind.METADATA, "dataset", loads::incrementAndGet, value -> true);
+        Thread.sleep(40);
+        nearCache.get(NearCache.Kind.METADATA, "dataset", loads::incrementAndGet, value -> true);
+        assertEquals(2, loads.get());
+
+        nearCache.setTtlMillis(0);
+        nearCache.get(NearCache.Kind.METADATA, "dataset", loads::incrementAndGet, value -> true);
+        nearCache.get(NearCache.Kind.METADATA, "dataset", loads::incrementAndGet, value -> true);
+        assertEquals(4, loads.get());
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.unidev.polydata4.api.packer;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompressionPackerTest {
+
+    @Test
+    void bytePackers() {
+        byte[] data = "poly-data ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        for (BytePacker packer : new BytePacker[]{new GzipBytePacker(), new Lz4BytePacker(), new ZstdBytePacker()}) {
+            assertArrayEquals(data, packer.unpack(packer.pack(data)));
+        }
+    }
+
+    @Test
+    void gzipFailsOnCorruptedData() {
+        assertThrows(RuntimeException.class, () -> new GzipBytePacker().unpack(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void gzipLeavesTargetStreamOpen() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream target = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        GzipPolyPacker packer = new GzipPolyPacker();
+        packer.packPoly(BasicPoly.newPoly("poly-1").with("value", 1), target);
+        assertFalse(closed.get());
+        BasicPoly poly = packer.unPackPoly(new ByteArrayInputStream(target.toByteArray()));
+        assertEquals("poly-1", poly._id());
+        assertEquals(1, poly.fetch("value", 0));
+    }
+
+    @Test
+    void lz4RejectsCorruptedData() {
+        Lz4BytePacker packer = new Lz4BytePacker();
+        byte[] packed = packer.pack("poly-data ".repeat(100).getBytes(StandardCharsets.UTF_8));
+        // length far above what compressed block can hold
+        byte[] huge = packed.clone();
+        huge[3] = 0x7f;
+        assertThrows(RuntimeException.class, () -> packer.unpack(huge));
+        // truncated block
+        byte[] truncated = new byte[packed.length - 5];
+        System.arraycopy(packed, 0, truncated, 0, truncated.length);
+        assertThrows(RuntimeException.class, () -> packer.unpack(truncated));
+    }
+
+    @Test
+    void zstdDictionary() throws Exception {
+        List<BasicPoly> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(BasicPoly.newPoly("poly-" + i)
+                    .with("title", "Title of poly " + i)
+                    .with("category", "category-" + (i % 7))
+                    .with("downloads", i * 31));
+        }
+        byte[] dictionary = ZstdPolyPacker.trainDictionary(samples, 4 * 1024);
+        ZstdPolyPacker packer = new ZstdPolyPacker(ZstdBytePacker.DEFAULT_LEVEL, dictionary);
+
+        BasicPoly poly = samples.get(42);
+        byte[] packed = packer.packPoly(poly);
+        BasicPoly result = packer.unPackPoly(new ByteArrayInputStream(packed));
+        assertEquals("poly-42", result._id());
+        assertEquals("category-0", result.fetch("category"));
+    }
+
+    @Test
+    void zstdDictionaryOfRegistry() throws Exception {
+        List<BasicPoly> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(BasicPoly.newPoly("poly-" + i)
+                    .with("title", "Title of poly " + i)
+                    .with("category", "category-" + (i % 7)));
+        }
+        byte[] dictionary = ZstdPolyPacker.trainDictionary(samples, 4 * 1024);
+        byte[] payload = new ZstdPolyPacker(ZstdBytePacker.DEFAULT_LEVEL, dictionary).packPoly(samples.get(3));
+        // registry without the dictionary can't decode payload
+        assertThrows(RuntimeException.class, () -> new ZstdPolyPacker().unPackPoly(new ByteArrayInputStream(payload)));
+
+        PolyPackerRegistry registry = PolyPackerRegistry.defaultRegistry();
+        HeaderPolyPacker writer = registry.zstdPacker(dictionary);
+        byte[] packed = writer.packPoly(samples.get(5));
+        assertEquals(PolyPackerRegistry.ZSTD_JSON, packed[0]);
+        assertEquals("poly-5", registry.headerPacker("json").unPackPoly(new ByteArrayInputStream(packed))._id());
+        // payloads without dictionary stay readable
+        byte[] plain = registry.headerPacker("zstd").packPoly(samples.get(6));
+        assertEquals("poly-6", writer.unPackPoly(new ByteArrayInputStream(plain))._id());
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.unidev.polydata4.api.packer;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HeaderPolyPackerTest {
+
+    PolyPackerRegistry registry = PolyPackerRegistry.defaultRegistry();
+
+    @Test
+    void readAllCodecs() throws Exception {
+        BasicPoly poly = BasicPoly.newPoly("test").with("name", "value").with("count", 10);
+        HeaderPolyPacker reader = registry.headerPacker("json");
+        for (String codec : new String[]{"json", "smile", "cbor", "gzip", "lz4", "zstd"}) {
+            byte[] payload = registry.headerPacker(codec).packPoly(poly);
+            assertEquals(codec.equals("json") ? '{' : registry.id(codec).get(), payload[0]);
+
+            BasicPoly result = reader.unPackPoly(new ByteArrayInputStream(payload));
+            assertEquals("test", result._id());
+            assertEquals("value", result.fetch("name"));
+            assertEquals(10, (Integer) result.fetch("count"));
+        }
+    }
+
+    @Test
+    void readPayloadWithoutHeader() throws Exception {
+        byte[] payload = new NoOpPolyPacker().packPoly(BasicPoly.newPoly("legacy"));
+        BasicPoly result = registry.headerPacker("smile").unPackPoly(new ByteArrayInputStream(payload));
+        assertEquals("legacy", result._id());
+    }
+
+    @Test
+    void jsonIsReadableWithoutHeaderPacker() throws Exception {
+        byte[] payload = registry.headerPacker("json").packPoly(BasicPoly.newPoly("plain"));
+        BasicPoly result = new NoOpPolyPacker().unPackPoly(new ByteArrayInputStream(payload));
+        assertEquals("plain", result._id());
+    }
+
+    @Test
+    void readJsonWithHeader() throws Exception {
+        byte[] json = new NoOpPolyPacker().packPoly(BasicPoly.newPoly("headed"));
+        byte[] payload = new byte[json.length + 1];
+        payload[0] = PolyPackerRegistry.JSON;
+        System.arraycopy(json, 0, payload, 1, json.length);
+        assertEquals("headed", registry.headerPacker("smile").unPackPoly(new ByteArrayInputStream(payload))._id());
+    }
+
+}
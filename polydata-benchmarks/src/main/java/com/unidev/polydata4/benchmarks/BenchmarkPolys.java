@@ -0,0 +1,63 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.domain.BasicPoly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic polys shaped like catalog records: short texts, tags, counters and nested attributes.
+ */
+public final class BenchmarkPolys {
+
+    private static final String[] WORDS = {
+            "photo", "editor", "music", "player", "video", "camera", "weather", "news", "radio", "game",
+            "puzzle", "offline", "free", "pro", "simple", "fast", "notes", "calendar", "fitness", "travel"
+    };
+
+    private BenchmarkPolys() {
+    }
+
+    public static List<BasicPoly> polys(int count) {
+        Random random = new Random(42);
+        List<BasicPoly> polys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            polys.add(poly(random, i));
+        }
+        return polys;
+    }
+
+    public static String tag(int i) {
+        return "tag-" + (i % 10);
+    }
+
+    private static BasicPoly poly(Random random, int i) {
+        return BasicPoly.newPoly("poly-" + i)
+                .with("title", words(random, 3))
+                .with("description", words(random, 40))
+                .with("category", WORDS[random.nextInt(WORDS.length)])
+                .with("tags", List.of(tag(i), WORDS[random.nextInt(WORDS.length)]))
+                .with("downloads", random.nextInt(1_000_000))
+                .with("rating", random.nextInt(50) / 10.0)
+                .with("_create_date", 1_600_000_000_000L + i)
+                .with("attributes", Map.of(
+                        "version", "1." + random.nextInt(20),
+                        "size", random.nextInt(100_000_000),
+                        "url", "https://example.com/app/" + i
+                ));
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+
+}
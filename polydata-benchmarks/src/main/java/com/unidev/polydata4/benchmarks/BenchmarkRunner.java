@@ -0,0 +1,50 @@
+package com.unidev.polydata4.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+
+/**
+ * Run benchmarks with one of predefined profiles and write results as JSON for regression tracking.
+ * <p>
+ * Usage: BenchmarkRunner [quick|full] [benchmark regexp] [result file]
+ * <ul>
+ * <li>quick - 1 fork, 2 warmup and 3 measurement iterations of 1s, for checking a change locally</li>
+ * <li>full - 2 forks, 5 warmup and 10 measurement iterations of 2s, for recorded results</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String profile = args.length > 0 ? args[0] : "quick";
+        String include = args.length > 1 ? args[1] : ".*";
+        String resultFile = args.length > 2 ? args[2] : "build/jmh/results-" + profile + ".json";
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile);
+        switch (profile) {
+            case "quick":
+                options.forks(1)
+                        .warmupIterations(2).warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(3).measurementTime(TimeValue.seconds(1));
+                break;
+            case "full":
+                options.forks(2)
+                        .warmupIterations(5).warmupTime(TimeValue.seconds(2))
+                        .measurementIterations(10).measurementTime(TimeValue.seconds(2));
+                break;
+            default:
+                throw new RuntimeException("Unknown benchmark profile " + profile);
+        }
+        new File(resultFile).getAbsoluteFile().getParentFile().mkdirs();
+        new Runner(options.build()).run();
+    }
+
+}
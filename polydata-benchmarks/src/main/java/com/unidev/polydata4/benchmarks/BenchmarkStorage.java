@@ -0,0 +1,150 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.PolydataFactory;
+import com.unidev.polydata4.api.Polydata;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.InsertRequest;
+import com.unidev.polydata4.flatfiles.PolydataYaml;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import lombok.Getter;
+import org.apache.commons.io.FileUtils;
+import redis.embedded.RedisServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Polydata storage created through {@link PolydataFactory} for benchmarks, with files and servers it needs.
+ * Supported storages: sqlite, flat-file-json, flat-file-yaml, redis (embedded server) and mongodb (in-memory server).
+ */
+public class BenchmarkStorage implements Closeable {
+
+    public static final String DATASET = "benchmark";
+
+    @Getter
+    private final Polydata polydata;
+
+    private final File root;
+    private final RedisServer redisServer;
+    private final MongoServer mongoServer;
+
+    private BenchmarkStorage(Polydata polydata, File root, RedisServer redisServer, MongoServer mongoServer) {
+        this.polydata = polydata;
+        this.root = root;
+        this.redisServer = redisServer;
+        this.mongoServer = mongoServer;
+    }
+
+    public static BenchmarkStorage open(String type) throws IOException {
+        return open(type, Map.of());
+    }
+
+    /**
+     * Storage with extra factory config, e.g. SQLite "tuning" preset.
+     */
+    public static BenchmarkStorage open(String type, Map<String, Object> options) throws IOException {
+        BasicPoly config = BasicPoly.newPoly().with("type", type);
+        options.forEach(config::put);
+        File root = null;
+        RedisServer redisServer = null;
+        MongoServer mongoServer = null;
+        switch (type) {
+            case "sqlite":
+            case "flat-file-json":
+                root = Files.createTempDirectory("polydata-benchmark").toFile();
+                config.put("root", root.getAbsolutePath());
+                break;
+            case "flat-file-yaml":
+                // YAML storage is read only, dataset directory is written before storage is opened
+                root = Files.createTempDirectory("polydata-benchmark").toFile();
+                File datasetDir = new File(root, DATASET);
+                FileUtils.forceMkdir(new File(datasetDir, PolydataYaml.DATA_DIR));
+                PolydataYaml.MAPPER.writeValue(new File(datasetDir, PolydataYaml.POLY_FILE),
+                        Map.of(Polydata.ITEM_PER_PAGE, Polydata.DEFAULT_ITEM_PER_PAGE));
+                config.put("root", root.getAbsolutePath());
+                break;
+            case "redis":
+                int port = freePort();
+                redisServer = new RedisServer(port);
+                redisServer.start();
+                config.put("uri", "redis://127.0.0.1:" + port);
+                config.put("prefix", "benchmark-");
+                break;
+            case "mongodb":
+                mongoServer = new MongoServer(new MemoryBackend());
+                InetSocketAddress address = mongoServer.bind();
+                config.put("uri", "mongodb://127.0.0.1:" + address.getPort() + "/polydata");
+                break;
+            default:
+                throw new RuntimeException("Unknown benchmark storage " + type);
+        }
+        Polydata polydata = new PolydataFactory().create(config)
+                .orElseThrow(() -> new RuntimeException("Failed to create storage " + type));
+        if (!polydata.exists(DATASET)) {
+            polydata.create(DATASET);
+        }
+        return new BenchmarkStorage(polydata, root, redisServer, mongoServer);
+    }
+
+    /**
+     * Insert polys in batches, each poly is indexed by date and by {@link BenchmarkPolys#tag(int)}.
+     * YAML storage gets polys written as data files and reloaded.
+     */
+    public void load(List<BasicPoly> polys, int batchSize) throws IOException {
+        if (polydata instanceof PolydataYaml) {
+            File datasetDir = new File(root, DATASET);
+            for (int i = 0; i < polys.size(); i++) {
+                Map<String, Object> file = new LinkedHashMap<>(polys.get(i).data());
+                file.put("_metadata", Map.of("_index", List.of(Polydata.DATE_INDEX, BenchmarkPolys.tag(i))));
+                PolydataYaml.MAPPER.writeValue(new File(datasetDir, PolydataYaml.DATA_DIR + "/" + polys.get(i)._id() + ".yaml"), file);
+            }
+            ((PolydataYaml) polydata).loadPoly(datasetDir);
+            return;
+        }
+        for (int i = 0; i < polys.size(); i += batchSize) {
+            polydata.insert(DATASET, requests(polys.subList(i, Math.min(i + batchSize, polys.size())), i));
+        }
+    }
+
+    static List<InsertRequest> requests(List<BasicPoly> polys, int offset) {
+        List<InsertRequest> requests = new ArrayList<>(polys.size());
+        for (int i = 0; i < polys.size(); i++) {
+            requests.add(InsertRequest.builder()
+                    .data(polys.get(i))
+                    .indexToPersist(Set.of(Polydata.DATE_INDEX, BenchmarkPolys.tag(offset + i)))
+                    .build());
+        }
+        return requests;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        polydata.close();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+        if (mongoServer != null) {
+            mongoServer.shutdownNow();
+        }
+        if (root != null) {
+            FileUtils.deleteQuietly(root);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert of one batch of new polys, storage is recreated for each iteration so it grows only within an iteration.
+ * YAML storage is read only and is not part of this benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final int POLYS = 50_000;
+
+    @Param({"sqlite", "flat-file-json", "redis", "mongodb"})
+    public String storage;
+
+    @Param({"1", "10", "100", "1000"})
+    public int batchSize;
+
+    private BenchmarkStorage benchmarkStorage;
+    private List<BasicPoly> polys;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        polys = BenchmarkPolys.polys(POLYS);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        benchmarkStorage = BenchmarkStorage.open(storage);
+        offset = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        benchmarkStorage.close();
+    }
+
+    @Benchmark
+    public BasicPolyList insert() {
+        if (offset + batchSize > POLYS) {
+            // ran out of new polys, following batches overwrite existing ones
+            offset = 0;
+        }
+        BasicPolyList result = benchmarkStorage.getPolydata().insert(BenchmarkStorage.DATASET,
+                BenchmarkStorage.requests(polys.subList(offset, offset + batchSize), offset));
+        offset += batchSize;
+        return result;
+    }
+
+}
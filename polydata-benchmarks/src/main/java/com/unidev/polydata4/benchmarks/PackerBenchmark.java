@@ -0,0 +1,66 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.api.packer.*;
+import com.unidev.polydata4.domain.BasicPoly;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pack and unpack time of one poly per codec, compression ratio of each codec is printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackerBenchmark {
+
+    private static final int POLYS = 1024;
+
+    @Param({"json", "smile", "cbor", "gzip", "lz4", "zstd", "zstd-dict"})
+    public String codec;
+
+    private PolyPacker packer;
+    private List<BasicPoly> polys;
+    private byte[][] packed;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        polys = BenchmarkPolys.polys(POLYS);
+        if ("zstd-dict".equals(codec)) {
+            // dictionary is trained on other polys than measured ones
+            byte[] dictionary = ZstdPolyPacker.trainDictionary(BenchmarkPolys.polys(POLYS * 4).subList(POLYS, POLYS * 4), 16 * 1024);
+            packer = new ZstdPolyPacker(ZstdBytePacker.DEFAULT_LEVEL, dictionary);
+        } else {
+            packer = PolyPackerRegistry.defaultRegistry().packer(PolyPackerRegistry.defaultRegistry().id(codec).get()).get();
+        }
+        PolyPacker json = new NoOpPolyPacker();
+        long jsonBytes = 0;
+        long packedBytes = 0;
+        packed = new byte[POLYS][];
+        for (int i = 0; i < POLYS; i++) {
+            packed[i] = packer.packPoly(polys.get(i));
+            packedBytes += packed[i].length;
+            jsonBytes += json.packPoly(polys.get(i)).length;
+        }
+        System.out.printf("%n%s: %.1f bytes per poly, ratio to json %.3f%n", codec, (double) packedBytes / POLYS, (double) packedBytes / jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] pack() throws Exception {
+        index = (index + 1) % POLYS;
+        return packer.packPoly(polys.get(index));
+    }
+
+    @Benchmark
+    public BasicPoly unpack() throws Exception {
+        index = (index + 1) % POLYS;
+        return packer.unPackPoly(new ByteArrayInputStream(packed[index]));
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PAGES and RANDOM queries and count by tag index on preloaded dataset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int PAGES = 20;
+
+    @Param({"sqlite", "flat-file-json", "flat-file-yaml", "redis", "mongodb"})
+    public String storage;
+
+    private BenchmarkStorage benchmarkStorage;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        benchmarkStorage = BenchmarkStorage.open(storage);
+        benchmarkStorage.load(BenchmarkPolys.polys(ReadBenchmark.POLYS), ReadBenchmark.LOAD_BATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        benchmarkStorage.close();
+    }
+
+    @Benchmark
+    public BasicPolyList queryPages() {
+        index++;
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.queryType(BasicPolyQuery.QueryFunction.PAGES);
+        query.index(BenchmarkPolys.tag(index));
+        query.page(index % PAGES);
+        return benchmarkStorage.getPolydata().query(BenchmarkStorage.DATASET, query);
+    }
+
+    @Benchmark
+    public BasicPolyList queryRandom() {
+        index++;
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.queryType(BasicPolyQuery.QueryFunction.RANDOM);
+        query.index(BenchmarkPolys.tag(index));
+        return benchmarkStorage.getPolydata().query(BenchmarkStorage.DATASET, query);
+    }
+
+    @Benchmark
+    public Long count() {
+        index++;
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index(BenchmarkPolys.tag(index));
+        return benchmarkStorage.getPolydata().count(BenchmarkStorage.DATASET, query);
+    }
+
+}
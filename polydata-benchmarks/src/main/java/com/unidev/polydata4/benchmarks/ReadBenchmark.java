@@ -0,0 +1,65 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.domain.BasicPolyList;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read of random id sets from preloaded dataset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    static final int POLYS = 10_000;
+    static final int LOAD_BATCH = 500;
+    private static final int ID_SETS = 256;
+
+    @Param({"sqlite", "flat-file-json", "flat-file-yaml", "redis", "mongodb"})
+    public String storage;
+
+    @Param({"1", "10", "100"})
+    public int ids;
+
+    private List<Set<String>> idSets;
+    private BenchmarkStorage benchmarkStorage;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        benchmarkStorage = BenchmarkStorage.open(storage);
+        benchmarkStorage.load(BenchmarkPolys.polys(POLYS), LOAD_BATCH);
+        Random random = new Random(7);
+        idSets = new ArrayList<>(ID_SETS);
+        for (int i = 0; i < ID_SETS; i++) {
+            Set<String> idSet = new HashSet<>();
+            while (idSet.size() < ids) {
+                idSet.add("poly-" + random.nextInt(POLYS));
+            }
+            idSets.add(idSet);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        benchmarkStorage.close();
+    }
+
+    @Benchmark
+    public BasicPolyList read() {
+        index = (index + 1) % ID_SETS;
+        return benchmarkStorage.getPolydata().read(BenchmarkStorage.DATASET, idSets.get(index));
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.unidev.polydata4.benchmarks;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert of batches and tag page queries of SQLite storage for each tuning preset.
+ * Storage is recreated for each iteration, queries read polys inserted by the iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqliteTuningBenchmark {
+
+    private static final int POLYS = 20_000;
+    private static final int BATCH = 100;
+    private static final int PAGES = 20;
+
+    @Param({"default", "read-heavy", "bulk-load"})
+    public String tuning;
+
+    private BenchmarkStorage benchmarkStorage;
+    private List<BasicPoly> polys;
+    private int offset;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        polys = BenchmarkPolys.polys(POLYS);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        benchmarkStorage = BenchmarkStorage.open("sqlite", Map.of("tuning", tuning));
+        benchmarkStorage.load(polys.subList(0, POLYS / 2), BATCH);
+        offset = POLYS / 2;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        benchmarkStorage.close();
+    }
+
+    @Benchmark
+    public BasicPolyList insert() {
+        if (offset + BATCH > POLYS) {
+            // ran out of new polys, following batches overwrite existing ones
+            offset = POLYS / 2;
+        }
+        BasicPolyList result = benchmarkStorage.getPolydata().insert(BenchmarkStorage.DATASET,
+                BenchmarkStorage.requests(polys.subList(offset, offset + BATCH), offset));
+        offset += BATCH;
+        return result;
+    }
+
+    @Benchmark
+    public BasicPolyList queryPages() {
+        index++;
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index(BenchmarkPolys.tag(index));
+        query.page(index % PAGES);
+        return benchmarkStorage.getPolydata().query(BenchmarkStorage.DATASET, query);
+    }
+
+}
@@ -7,6 +7,7 @@ import freemarker.template.Template;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -256,6 +257,63 @@ public abstract class IntegrationTest {
         }
     }
 
+    @Test
+    void queryCursor() {
+        String poly = createPoly();
+        List<InsertRequest> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("test_" + i).with("app", i + "").with("field", i))
+                    .indexToPersist(Set.of("tag_x", "_date"))
+                    .build());
+        }
+        polydata.insert(poly, items);
+
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            BasicPolyQuery query = new BasicPolyQuery();
+            query.queryType(BasicPolyQuery.QueryFunction.CURSOR);
+            query.index("tag_x");
+            if (cursor != null) {
+                query.cursor(cursor);
+            }
+            BasicPolyList list = polydata.query(poly, query);
+            for (BasicPoly item : list.list()) {
+                assertTrue(seen.add(item._id()), "Duplicate poly " + item._id() + " page: " + pages);
+            }
+            cursor = (String) list.getMetadata().get(BasicPolyQuery.NEXT_CURSOR);
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+    }
+
+    @Test
+    void streamAll() {
+        String poly = createPoly();
+        List<InsertRequest> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("test_" + i).with("app", i + ""))
+                    .indexToPersist(Set.of("tag_x", "_date"))
+                    .build());
+        }
+        polydata.insert(poly, items);
+
+        Set<String> seen = new HashSet<>();
+        try (Stream<BasicPoly> stream = polydata.stream(poly, 10)) {
+            stream.forEach(item -> assertTrue(seen.add(item._id()), "Duplicate poly " + item._id()));
+        }
+        assertEquals(25, seen.size());
+        // stream is closed, storage resources are released for next one
+        try (Stream<BasicPoly> stream = polydata.stream(poly, 7)) {
+            assertEquals(25, stream.count());
+        }
+    }
+
     @Test
     void configOperations() {
         String poly = createPoly();
@@ -0,0 +1,33 @@
+package com.unidev.polydata4;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import redis.clients.jedis.Jedis;
+
+import java.net.URI;
+
+/**
+ * Runs against local cluster, e.g. {@code -Dredis-cluster-nodes=redis://localhost:7000,redis://localhost:7001,redis://localhost:7002}.
+ */
+@EnabledIfSystemProperty(named = "redis-cluster-nodes", matches = ".+")
+public class RedisClusterIntegrationTest extends IntegrationTest {
+
+    @BeforeEach
+    public void setup() {
+        String nodes = System.getProperty("redis-cluster-nodes");
+        for (String node : nodes.split(",")) {
+            URI uri = URI.create(node.trim());
+            try (Jedis jedis = new Jedis(uri.getHost(), uri.getPort())) {
+                if (jedis.info("replication").contains("role:master")) {
+                    jedis.flushAll();
+                }
+            }
+        }
+        BasicPoly config = BasicPoly.newPoly()
+                .with("type", "redis")
+                .with("cluster-nodes", nodes);
+        create(config);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.unidev.polydata4;
+
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.InsertRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import redis.clients.jedis.Jedis;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against local primary with replicas,
+ * e.g. {@code -Dredis-primary-uri=redis://localhost:6379 -Dredis-replica-uris=redis://localhost:6380,redis://localhost:6381}.
+ */
+@EnabledIfSystemProperty(named = "redis-replica-uris", matches = ".+")
+public class RedisReplicaIntegrationTest extends IntegrationTest {
+
+    @BeforeEach
+    public void setup() {
+        URI primary = URI.create(System.getProperty("redis-primary-uri"));
+        try (Jedis jedis = new Jedis(primary.getHost(), primary.getPort())) {
+            jedis.flushAll();
+        }
+        BasicPoly config = BasicPoly.newPoly()
+                .with("type", "redis")
+                .with("uri", primary.toString())
+                .with("replica-uris", System.getProperty("redis-replica-uris"))
+                .with("replica-staleness-millis", 2000);
+        create(config);
+    }
+
+    @Test
+    void readFromReplicaAfterStalenessWindow() throws InterruptedException {
+        String poly = createPoly();
+        polydata.insert(poly, List.of(InsertRequest.builder()
+                .data(BasicPoly.newPoly("poly-1"))
+                .indexToPersist(Set.of("_date"))
+                .build()));
+        // written dataset is read from primary
+        long before = replicaReads();
+        assertEquals(1, polydata.read(poly, Set.of("poly-1")).list().size());
+        assertEquals(before, replicaReads());
+
+        Thread.sleep(3000);
+        assertEquals(1, polydata.read(poly, Set.of("poly-1")).list().size());
+        assertTrue(replicaReads() > before);
+    }
+
+    private long replicaReads() {
+        long calls = 0;
+        for (String replica : System.getProperty("redis-replica-uris").split(",")) {
+            URI uri = URI.create(replica.trim());
+            try (Jedis jedis = new Jedis(uri.getHost(), uri.getPort())) {
+                for (String line : jedis.info("commandstats").split("\r?\n")) {
+                    if (line.startsWith("cmdstat_mget:calls=")) {
+                        calls += Long.parseLong(line.substring("cmdstat_mget:calls=".length(), line.indexOf(',')));
+                    }
+                }
+            }
+        }
+        return calls;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.unidev.polydata4;
+
+import com.unidev.polydata4.api.AsyncExecutors;
+import com.unidev.polydata4.api.AsyncPolydata;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import com.unidev.polydata4.domain.InsertRequest;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Reads polys concurrently on virtual threads and checks that JFR recorded no pinned virtual threads.
+ * Runs on JDK 21 toolchain by {@code pinningTest} task, elsewhere skipped before JDK 21 unless {@code -Drequire-virtual-threads=true}.
+ * Redis runs against local server, e.g. {@code -Dredis-primary-uri=redis://localhost:6379}.
+ */
+public class VirtualThreadPinningIntegrationTest {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int POLYS = 100;
+    private static final int READS = 500;
+
+    private final PolydataFactory factory = new PolydataFactory();
+
+    @TempDir
+    File root;
+
+    @BeforeEach
+    public void setup() {
+        if (Boolean.getBoolean("require-virtual-threads")) {
+            assertTrue(AsyncExecutors.virtualThreadsAvailable(), "Virtual threads are not available");
+        }
+        assumeTrue(AsyncExecutors.virtualThreadsAvailable(), "Virtual threads are not available");
+    }
+
+    @Test
+    void sqlite() throws IOException {
+        assertNoPinning(BasicPoly.newPoly()
+                .with("type", "sqlite")
+                .with("root", root.getAbsolutePath()));
+    }
+
+    @Test
+    void flatFileJson() throws IOException {
+        assertNoPinning(BasicPoly.newPoly()
+                .with("type", "flat-file-json")
+                .with("root", root.getAbsolutePath()));
+    }
+
+    @Test
+    void redis() throws IOException {
+        String uri = System.getProperty("redis-primary-uri");
+        assumeTrue(uri != null, "Redis is not configured");
+        URI redisUri = URI.create(uri);
+        try (Jedis jedis = new Jedis(redisUri.getHost(), redisUri.getPort())) {
+            jedis.flushAll();
+        }
+        // fewer connections than concurrent reads, so readers wait for connection permits
+        assertNoPinning(BasicPoly.newPoly()
+                .with("type", "redis")
+                .with("uri", uri)
+                .with("max-total", 8)
+                .with("min-idle", 0));
+    }
+
+    private void assertNoPinning(BasicPoly config) throws IOException {
+        config.put("async-executor", "virtual");
+        try (AsyncPolydata polydata = factory.createAsync(config).get()) {
+            String dataset = "pinning-" + UUID.randomUUID();
+            polydata.create(dataset).join();
+            List<InsertRequest> requests = new ArrayList<>();
+            for (int i = 0; i < POLYS; i++) {
+                requests.add(InsertRequest.builder()
+                        .data(BasicPoly.newPoly("poly-" + i).with("value", i))
+                        .indexToPersist(Set.of("_date", "tag-" + (i % 5)))
+                        .build());
+            }
+            polydata.insert(dataset, requests).join();
+
+            List<RecordedEvent> events = record(() -> readConcurrently(polydata, dataset));
+            assertTrue(events.isEmpty(), () -> "Pinned virtual threads:\n" + events.stream()
+                    .map(event -> event.getStackTrace() == null ? event.toString() : event.getStackTrace().getFrames().stream()
+                            .limit(10)
+                            .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                            .collect(Collectors.joining("\n  ")))
+                    .collect(Collectors.joining("\n")));
+        }
+    }
+
+    private void readConcurrently(AsyncPolydata polydata, String dataset) {
+        List<CompletableFuture<?>> reads = new ArrayList<>();
+        for (int i = 0; i < READS; i++) {
+            BasicPolyQuery query = new BasicPolyQuery();
+            query.index("tag-" + (i % 5));
+            switch (i % 4) {
+                case 0:
+                    reads.add(polydata.read(dataset, Set.of("poly-" + (i % POLYS), "poly-" + ((i + 1) % POLYS)))
+                            .thenAccept(list -> assertEquals(2, list.list().size())));
+                    break;
+                case 1:
+                    reads.add(polydata.query(dataset, query)
+                            .thenAccept(list -> assertEquals(10, list.list().size())));
+                    break;
+                case 2:
+                    query.queryType(BasicPolyQuery.QueryFunction.RANDOM);
+                    reads.add(polydata.query(dataset, query));
+                    break;
+                default:
+                    reads.add(polydata.count(dataset, query)
+                            .thenAccept(count -> assertEquals(POLYS / 5, count)));
+            }
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Pinning events of JFR recording taken while logic runs.
+     */
+    private List<RecordedEvent> record(Runnable logic) throws IOException {
+        Path file = new File(root, "pinning.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            logic.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (PINNED_EVENT.equals(event.getEventType().getName())) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+}
@@ -1,5 +1,8 @@
 package com.unidev.polydata4;
 
+import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.AsyncPolydata;
+import com.unidev.polydata4.api.NearCache;
 import com.unidev.polydata4.api.Polydata;
 import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.factory.*;
@@ -24,6 +27,9 @@ import java.util.Optional;
  * provider: ""
  * name: ""
  * }
+ * near-cache-ttl-millis: 60000
+ * async-executor: "virtual"
+ * async-threads: 32
  * }
  */
 @Slf4j
@@ -62,10 +68,20 @@ public class PolydataFactory {
         // configure cache
         polydata.ifPresent(value -> {
             storageFactory.fetchCache(config.fetch("cache")).ifPresent(value::setCache);
+            if (value instanceof AbstractPolydata) {
+                ((AbstractPolydata) value).nearCache().setTtlMillis(config.fetch("near-cache-ttl-millis", Long.class, NearCache.DEFAULT_TTL_MILLIS));
+            }
         });
         polydata.ifPresent(Polydata::prepareStorage);
         return polydata;
     }
 
+    /**
+     * Create storage with non-blocking interface, operations return futures.
+     */
+    public Optional<AsyncPolydata> createAsync(BasicPoly config) {
+        return create(config).map(polydata -> storageMap.get(config.fetch("type")).async(polydata, config));
+    }
+
 
 }
@@ -23,6 +23,10 @@ public class FlatFileJsonFactory extends StorageFactory {
         }
         String root = config.fetch("root") + "";
         PolydataSingleJson polydataJson = new PolydataSingleJson(new File(root));
+        polydataJson.setSnapshots(config.fetch("snapshots", false));
+        polydataJson.setJournal(config.fetch("journal", true));
+        polydataJson.setJournalSync(config.fetch("journal-sync", false));
+        polydataJson.setCompactionIntervalSeconds(config.fetch("compaction-interval-seconds", 60));
         return Optional.of(polydataJson);
     }
 
@@ -23,6 +23,9 @@ public class FlatFileYamlFactory extends StorageFactory {
         }
         String root = config.fetch("root") + "";
         PolydataYaml polydataYaml = new PolydataYaml(new File(root));
+        polydataYaml.setLoadThreads(config.fetch("load-threads", 1));
+        polydataYaml.setSnapshots(config.fetch("snapshots", false));
+        polydataYaml.setWatch(config.fetch("watch", false));
         return Optional.of(polydataYaml);
     }
 
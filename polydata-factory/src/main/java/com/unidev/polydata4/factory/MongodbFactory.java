@@ -1,7 +1,9 @@
 package com.unidev.polydata4.factory;
 
+import com.unidev.polydata4.api.AsyncPolydata;
 import com.unidev.polydata4.api.Polydata;
 import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.mongodb.MongodbAsyncPolydata;
 import com.unidev.polydata4.mongodb.PolydataMongodb;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,4 +29,16 @@ public class MongodbFactory extends StorageFactory {
         return Optional.of(polydataMongodb);
     }
 
+    /**
+     * Async storage reads with async driver, see {@link MongodbAsyncPolydata}.
+     * Storages with JCache run all calls on executor, so reads keep going through the cache.
+     */
+    @Override
+    public AsyncPolydata async(Polydata polydata, BasicPoly config) {
+        if (config.containsKey("cache")) {
+            return super.async(polydata, config);
+        }
+        return new MongodbAsyncPolydata((PolydataMongodb) polydata, asyncExecutor(config), true);
+    }
+
 }
@@ -1,20 +1,47 @@
 package com.unidev.polydata4.factory;
 
+import com.unidev.polydata4.api.AsyncPolydata;
 import com.unidev.polydata4.api.Polydata;
-import com.unidev.polydata4.api.packer.NoOpPolyPacker;
+import com.unidev.polydata4.api.packer.PolyPacker;
+import com.unidev.polydata4.api.packer.PolyPackerRegistry;
 import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.redis.LettuceAsyncPolydata;
 import com.unidev.polydata4.redis.PolydataRedis;
+import com.unidev.polydata4.redis.RedisClusterConnections;
+import com.unidev.polydata4.redis.RedisConnections;
+import com.unidev.polydata4.redis.RedisIndexMode;
+import com.unidev.polydata4.redis.RedisPoolConnections;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Optional;
+import java.util.*;
 
 @Slf4j
 public class RedisFactory extends StorageFactory {
 
+    /**
+     * Packers selectable by "packer" config key, custom packers can be registered before storage creation.
+     */
+    @Getter
+    private final PolyPackerRegistry packerRegistry = PolyPackerRegistry.defaultRegistry();
+
     @Override
     public String type() {
         return "redis";
@@ -22,12 +49,15 @@ public class RedisFactory extends StorageFactory {
 
     @Override
     public Optional<Polydata> create(BasicPoly config) {
-        if (!config.containsKey("uri")) {
+        boolean cluster = config.containsKey("cluster-nodes");
+        if (!config.containsKey("uri") && !cluster) {
             log.warn("Missing URI");
             return Optional.empty();
         }
-        String uri = config.fetch("uri");
-        URI redisUri = URI.create(uri);
+        // Lua scripts build poly keys from prefix and id, cluster executes them only when keys share a hash slot
+        if (cluster && !config.fetch("hash-tags", true)) {
+            throw new IllegalArgumentException("hash-tags can't be disabled for Redis cluster");
+        }
         final JedisPoolConfig poolConfig = new JedisPoolConfig();
         poolConfig.setMaxTotal(config.fetch("max-total", 100));
         poolConfig.setMaxIdle(config.fetch("max-idle", 10));
@@ -40,19 +70,108 @@ public class RedisFactory extends StorageFactory {
         poolConfig.setTimeBetweenEvictionRunsMillis(Duration.ofSeconds(config.fetch("time-between-eviction-runs", 30)).toMillis());
         poolConfig.setNumTestsPerEvictionRun(config.fetch("num-tests-per-eviction", 10));
 
-        JedisPool jedisPool = new JedisPool(poolConfig, redisUri.getHost(), redisUri.getPort());
+        RedisConnections connections;
+        if (cluster) {
+            Set<HostAndPort> nodes = new HashSet<>();
+            uris(config.fetch("cluster-nodes")).forEach(uri -> nodes.add(new HostAndPort(uri.getHost(), uri.getPort())));
+            connections = new RedisClusterConnections(new JedisCluster(nodes, poolConfig));
+        } else {
+            URI redisUri = URI.create(config.fetch("uri"));
+            List<JedisPool> replicas = new ArrayList<>();
+            uris(config.fetch("replica-uris")).forEach(uri -> replicas.add(new JedisPool(poolConfig, uri.getHost(), uri.getPort())));
+            connections = new RedisPoolConnections(new JedisPool(poolConfig, redisUri.getHost(), redisUri.getPort()),
+                    replicas, config.fetch("replica-check-interval-millis", Long.class, RedisPoolConnections.DEFAULT_CHECK_INTERVAL_MILLIS));
+        }
 
         PolydataRedis polydataRedis = new PolydataRedis(
 
                 PolydataRedis.PolydataRedisConfig.builder()
-                        .pool(jedisPool)
+                        .connections(connections)
                         .hashIds(config.fetch("hash-ids", false))
+                        .hashTags(config.fetch("hash-tags", cluster))
+                        .replicaStalenessMillis(config.fetch("replica-staleness-millis", Long.class, 0L))
                         .prefix(config.fetch("prefix", "prod-"))
-                        .polyPacker(new NoOpPolyPacker())
+                        .polyPacker(packerRegistry.headerPacker(config.fetch("packer", "json")))
+                        .datasetPackers(datasetPackers(config))
+                        .batchSize(config.fetch("batch-size", PolydataRedis.DEFAULT_BATCH_SIZE))
+                        .indexMode(RedisIndexMode.of(config.fetch("index-mode", "list")))
+                        .maxConnections(config.fetch("max-connections", poolConfig.getMaxTotal()))
                         .build()
 
         );
         return Optional.of(polydataRedis);
     }
 
+    /**
+     * Zstd packers of datasets listed in "zstd-dictionaries", dataset name to path of dictionary file.
+     */
+    private Map<String, PolyPacker> datasetPackers(BasicPoly config) {
+        Map<String, Object> dictionaries = config.fetch("zstd-dictionaries", Collections.emptyMap());
+        Map<String, PolyPacker> packers = new HashMap<>();
+        dictionaries.forEach((dataset, path) -> {
+            try {
+                packers.put(dataset, packerRegistry.zstdPacker(Files.readAllBytes(Paths.get(String.valueOf(path)))));
+            } catch (IOException e) {
+                log.error("Failed to read Zstd dictionary {} of dataset {}", path, dataset, e);
+                throw new RuntimeException(e);
+            }
+        });
+        return packers;
+    }
+
+    /**
+     * Async storage reads through Lettuce connection to the same nodes, other calls run on executor,
+     * see {@link LettuceAsyncPolydata}.
+     */
+    @Override
+    public AsyncPolydata async(Polydata polydata, BasicPoly config) {
+        RedisClusterAsyncCommands<byte[], byte[]> commands;
+        Closeable connection;
+        if (config.containsKey("cluster-nodes")) {
+            List<RedisURI> nodes = new ArrayList<>();
+            uris(config.fetch("cluster-nodes")).forEach(uri -> nodes.add(RedisURI.create(uri)));
+            RedisClusterClient client = RedisClusterClient.create(nodes);
+            StatefulRedisClusterConnection<byte[], byte[]> clusterConnection = client.connect(ByteArrayCodec.INSTANCE);
+            commands = clusterConnection.async();
+            connection = () -> {
+                clusterConnection.close();
+                client.shutdown();
+            };
+        } else {
+            RedisClient client = RedisClient.create(RedisURI.create(URI.create(config.fetch("uri"))));
+            StatefulRedisConnection<byte[], byte[]> redisConnection = client.connect(ByteArrayCodec.INSTANCE);
+            commands = redisConnection.async();
+            connection = () -> {
+                redisConnection.close();
+                client.shutdown();
+            };
+        }
+        return new LettuceAsyncPolydata((PolydataRedis) polydata, commands, connection, asyncExecutor(config), true);
+    }
+
+    /**
+     * Platform threads are limited by connection pool, more threads would wait for connections.
+     */
+    @Override
+    protected int defaultAsyncThreads(BasicPoly config) {
+        return config.fetch("max-total", 100);
+    }
+
+    /**
+     * Redis URIs from list or comma separated string, empty when value is missing.
+     */
+    private static List<URI> uris(Object value) {
+        List<URI> uris = new ArrayList<>();
+        if (value == null) {
+            return uris;
+        }
+        Collection<?> values = value instanceof Collection ? (Collection<?>) value : List.of(value.toString().split(","));
+        for (Object uri : values) {
+            if (!uri.toString().isBlank()) {
+                uris.add(URI.create(uri.toString().trim()));
+            }
+        }
+        return uris;
+    }
+
 }
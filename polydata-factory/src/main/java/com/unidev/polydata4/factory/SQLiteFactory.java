@@ -4,7 +4,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.unidev.polydata4.api.Polydata;
 import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.sqlite.PolydataSqlite;
+import com.unidev.polydata4.sqlite.SqliteTuning;
 import lombok.extern.slf4j.Slf4j;
+import org.sqlite.SQLiteConfig;
 
 import java.io.File;
 import java.util.Optional;
@@ -23,6 +25,24 @@ public class SQLiteFactory extends StorageFactory {
             return Optional.empty();
         }
         String root = config.fetch("root") + "";
-        return Optional.of(new PolydataSqlite(new File(root), new ObjectMapper()));
+        PolydataSqlite polydataSqlite = new PolydataSqlite(new File(root), new ObjectMapper());
+        polydataSqlite.setReadConnections(config.fetch("read-connections", PolydataSqlite.DEFAULT_READ_CONNECTIONS));
+        polydataSqlite.setTuning(fetchTuning(config));
+        return Optional.of(polydataSqlite);
+    }
+
+    /**
+     * Build tuning from preset selected by "tuning" key, single pragmas can be overridden by own keys.
+     */
+    static SqliteTuning fetchTuning(BasicPoly config) {
+        SqliteTuning preset = SqliteTuning.preset(config.fetch("tuning", "default"));
+        return preset.toBuilder()
+                .journalMode(SQLiteConfig.JournalMode.valueOf(config.fetch("journal-mode", preset.getJournalMode().name()).toUpperCase()))
+                .synchronous(SQLiteConfig.SynchronousMode.valueOf(config.fetch("synchronous", preset.getSynchronous().name()).toUpperCase()))
+                .mmapSize(config.fetch("mmap-size", Long.class, preset.getMmapSize()))
+                .cacheSize(config.fetch("cache-size", Integer.class, preset.getCacheSize()))
+                .tempStore(SQLiteConfig.TempStore.valueOf(config.fetch("temp-store", preset.getTempStore().name()).toUpperCase()))
+                .pageSize(config.fetch("page-size", Integer.class, preset.getPageSize()))
+                .build();
     }
 }
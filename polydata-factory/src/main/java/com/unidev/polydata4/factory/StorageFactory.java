@@ -1,5 +1,8 @@
 package com.unidev.polydata4.factory;
 
+import com.unidev.polydata4.api.AsyncExecutors;
+import com.unidev.polydata4.api.AsyncPolydata;
+import com.unidev.polydata4.api.ExecutorAsyncPolydata;
 import com.unidev.polydata4.api.Polydata;
 import com.unidev.polydata4.domain.BasicPoly;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +18,7 @@ import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -111,5 +115,27 @@ public abstract class StorageFactory {
      */
     public abstract Optional<Polydata> create(BasicPoly config);
 
+    /**
+     * Async flavor of created storage, blocking calls are run on executor selected by "async-executor" key:
+     * "virtual" threads (platform threads before JDK 21) or "platform" pool of "async-threads" size.
+     * Factories with non-blocking drivers can return native implementation.
+     */
+    public AsyncPolydata async(Polydata polydata, BasicPoly config) {
+        return new ExecutorAsyncPolydata(polydata, asyncExecutor(config), true);
+    }
+
+    /**
+     * Executor of blocking calls selected by "async-executor" and "async-threads" keys, owned by async storage.
+     */
+    protected ExecutorService asyncExecutor(BasicPoly config) {
+        return AsyncExecutors.of(config.fetch("async-executor", "virtual"), config.fetch("async-threads", defaultAsyncThreads(config)));
+    }
+
+    /**
+     * Platform threads used for async calls when not configured.
+     */
+    protected int defaultAsyncThreads(BasicPoly config) {
+        return AsyncExecutors.DEFAULT_THREADS;
+    }
 
 }
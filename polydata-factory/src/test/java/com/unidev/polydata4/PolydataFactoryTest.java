@@ -1,15 +1,28 @@
 package com.unidev.polydata4;
 
+import com.unidev.polydata4.api.AsyncPolydata;
 import com.unidev.polydata4.api.Polydata;
 import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.InsertRequest;
 import com.unidev.polydata4.flatfiles.PolydataSingleJson;
 import com.unidev.polydata4.flatfiles.PolydataYaml;
+import com.unidev.polydata4.sqlite.PolydataSqlite;
+import org.sqlite.SQLiteConfig;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PolydataFactoryTest {
@@ -51,6 +64,16 @@ public class PolydataFactoryTest {
         assertFalse(polydata.isPresent());
     }
 
+    @Test
+    void redisClusterRequiresHashTags() {
+        BasicPoly config = new BasicPoly();
+        config.put("type", "redis");
+        config.put("cluster-nodes", "redis://localhost:7000");
+        config.put("hash-tags", false);
+
+        assertThrows(IllegalArgumentException.class, () -> polydataFactory.create(config));
+    }
+
     @Test
     void flatFileFactory() {
         BasicPoly config = new BasicPoly();
@@ -75,4 +98,53 @@ public class PolydataFactoryTest {
         assertTrue(polydata.get() instanceof PolydataSingleJson);
     }
 
+    @Test
+    void sqliteTuning() {
+        new File("/tmp/polydata-sqlite").mkdirs();
+
+        BasicPoly config = new BasicPoly();
+        config.put("type", "sqlite");
+        config.put("root", "/tmp/polydata-sqlite");
+        config.put("tuning", "read-heavy");
+        config.put("mmap-size", 1024);
+
+        Optional<Polydata> polydata = polydataFactory.create(config);
+        assertTrue(polydata.isPresent());
+        PolydataSqlite polydataSqlite = (PolydataSqlite) polydata.get();
+        assertEquals(SQLiteConfig.SynchronousMode.NORMAL, polydataSqlite.getTuning().getSynchronous());
+        assertEquals(1024L, polydataSqlite.getTuning().getMmapSize());
+    }
+
+    @Test
+    void sqliteAsync() throws IOException {
+        new File("/tmp/polydata-sqlite").mkdirs();
+
+        BasicPoly config = new BasicPoly();
+        config.put("type", "sqlite");
+        config.put("root", "/tmp/polydata-sqlite");
+        config.put("async-executor", "platform");
+        config.put("async-threads", 4);
+
+        Optional<AsyncPolydata> async = polydataFactory.createAsync(config);
+        assertTrue(async.isPresent());
+        assertTrue(async.get().sync() instanceof PolydataSqlite);
+        try (AsyncPolydata polydata = async.get()) {
+            String dataset = "async-" + UUID.randomUUID();
+            polydata.create(dataset).join();
+            List<CompletableFuture<BasicPolyList>> inserts = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                inserts.add(polydata.insert(dataset, List.of(InsertRequest.builder()
+                        .data(BasicPoly.newPoly("poly-" + i))
+                        .indexToPersist(Set.of("_date"))
+                        .build())));
+            }
+            CompletableFuture.allOf(inserts.toArray(new CompletableFuture[0])).join();
+
+            assertTrue(polydata.exists(dataset).join());
+            assertEquals(2, polydata.read(dataset, Set.of("poly-1", "poly-2")).join().list().size());
+            assertEquals(10L, polydata.forEach(dataset, 3, poly -> {
+            }).join());
+        }
+    }
+
 }
@@ -0,0 +1,268 @@
+package com.unidev.polydata4.flatfiles;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Append only journal of changes of one {@link FlatFileRepository}, one JSON entry per line.
+ * Entries of one {@link #append(Collection)} call are written with a single write, so after a crash journal ends
+ * with complete batches and possibly one partial line, which is dropped on {@link #replay(File, Consumer)}.
+ * Broken entries in the middle of journal are skipped and logged, entries after them are still replayed.
+ * On compaction journal is rotated: current entries are moved to {@link #ROTATED_EXTENSION} file, which is deleted
+ * once repository file with these entries is written.
+ * Operations are serialized with a lock.
+ */
+@Slf4j
+public class FlatFileJournal implements Closeable {
+
+    public static final String EXTENSION = ".journal";
+    public static final String ROTATED_EXTENSION = ".compacting";
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private final Path file;
+    private final Path rotated;
+    private final boolean sync;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+
+    public FlatFileJournal(File file, boolean sync) {
+        this.file = file.toPath();
+        this.rotated = rotatedFile(file).toPath();
+        this.sync = sync;
+        this.channel = open();
+    }
+
+    public static File rotatedFile(File journal) {
+        return new File(journal.getParentFile(), journal.getName() + ROTATED_EXTENSION);
+    }
+
+    private FileChannel open() {
+        try {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Append entries, with sync enabled write is forced to disk before return.
+     */
+    public void append(Collection<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Entry entry : entries) {
+                MAPPER.writeValue(out, entry);
+                out.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True when all entries are written to repository file.
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return channel.size() == 0 && !Files.exists(rotated);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move current entries to rotated file and continue with empty journal.
+     * Entries left in rotated file by failed compaction are kept in front of current ones.
+     */
+    public void rotate() {
+        lock.lock();
+        try {
+            channel.close();
+            if (Files.exists(rotated)) {
+                Files.write(rotated, Files.readAllBytes(file), StandardOpenOption.APPEND);
+                Files.delete(file);
+            } else {
+                Files.move(file, rotated);
+            }
+            if (sync) {
+                try (FileChannel rotatedChannel = FileChannel.open(rotated, StandardOpenOption.WRITE)) {
+                    rotatedChannel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            channel = open();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop rotated entries after they were written to repository file.
+     */
+    public void compacted() {
+        lock.lock();
+        try {
+            Files.deleteIfExists(rotated);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close journal, empty journal file is removed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            boolean empty = channel.size() == 0;
+            channel.close();
+            if (empty) {
+                Files.deleteIfExists(file);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pass entries of journal file to consumer.
+     * Broken entries followed by complete ones are skipped, broken tail left by interrupted write is truncated.
+     *
+     * @return number of replayed entries
+     */
+    public static int replay(File journal, Consumer<Entry> consumer) {
+        if (!journal.isFile()) {
+            return 0;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(journal.toPath());
+            int entries = 0;
+            int start = 0;
+            int valid = 0;
+            for (int end = 0; end < bytes.length; end++) {
+                if (bytes[end] != '\n') {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = MAPPER.readValue(bytes, start, end - start, Entry.class);
+                } catch (IOException e) {
+                    log.warn("Broken entry in journal {} at {}", journal.getPath(), start, e);
+                    start = end + 1;
+                    continue;
+                }
+                if (valid < start) {
+                    log.error("Skipped {} bytes of broken entries in journal {} at {}", start - valid, journal.getPath(), valid);
+                }
+                consumer.accept(entry);
+                entries++;
+                start = end + 1;
+                valid = start;
+            }
+            if (valid < bytes.length) {
+                log.warn("Dropping {} bytes of incomplete entries from journal {}", bytes.length - valid, journal.getPath());
+                try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public enum Operation {
+        PUT, REMOVE, CONFIG, METADATA
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private Operation operation;
+        private String id;
+        private BasicPoly poly;
+        private Set<String> tags;
+
+        public static Entry put(BasicPoly poly, Set<String> tags) {
+            return new Entry(Operation.PUT, poly._id(), poly, tags);
+        }
+
+        public static Entry remove(String id) {
+            return new Entry(Operation.REMOVE, id, null, null);
+        }
+
+        public static Entry config(BasicPoly config) {
+            return new Entry(Operation.CONFIG, null, config, null);
+        }
+
+        public static Entry metadata(BasicPoly metadata) {
+            return new Entry(Operation.METADATA, null, metadata, null);
+        }
+
+        /**
+         * Apply entry to repository, applying the same entry again gives the same result.
+         */
+        public void apply(FlatFileRepository repository) {
+            switch (operation) {
+                case PUT:
+                    repository.remove(id);
+                    repository.add(poly, tags);
+                    break;
+                case REMOVE:
+                    repository.remove(id);
+                    break;
+                case CONFIG:
+                    repository.setConfig(poly);
+                    break;
+                case METADATA:
+                    repository.setMetadata(poly);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal operation " + operation);
+            }
+        }
+    }
+
+}
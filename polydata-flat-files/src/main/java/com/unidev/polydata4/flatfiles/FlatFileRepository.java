@@ -1,11 +1,20 @@
 package com.unidev.polydata4.flatfiles;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
 import lombok.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static com.unidev.polydata4.api.Polydata.INDEXES;
 
@@ -25,8 +34,95 @@ public class FlatFileRepository {
     @Getter
     private Map<String, BasicPoly> polyById = new ConcurrentHashMap<>();
 
+    /**
+     * Tag to ids of polys, written to file for readers, on load index is rebuilt from tags stored in polys.
+     */
     @Getter
-    private Map<String, List<String>> polyIndex = new ConcurrentHashMap<>();
+    private Map<String, TagIndex> polyIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Path of source file relative to data directory to id of poly loaded from it, used to apply changes of single files.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, String> sourceFiles = new HashMap<>();
+
+    /**
+     * Polys added during bulk load are indexed once in {@link #finishBulkLoad()}.
+     */
+    @JsonIgnore
+    private boolean bulkLoad;
+
+    /**
+     * Tag indexes are rebalanced in place by writers, readers of indexes hold read lock.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /**
+     * Set polys and rebuild index from tags stored in polys.
+     */
+    public void setPolyById(Map<String, BasicPoly> polyById) {
+        this.polyById = new ConcurrentHashMap<>(polyById);
+        rebuildIndex();
+    }
+
+    /**
+     * Stored index lists are ignored, index is rebuilt in {@link #setPolyById(Map)}.
+     */
+    public void setPolyIndex(Map<String, List<String>> polyIndex) {
+    }
+
+    /**
+     * Start bulk load, polys are added without indexing until {@link #finishBulkLoad()}, index queries are not valid in between.
+     */
+    public void startBulkLoad() {
+        bulkLoad = true;
+    }
+
+    /**
+     * Finish bulk load, each tag is sorted once.
+     */
+    public void finishBulkLoad() {
+        bulkLoad = false;
+        write(this::rebuildIndex);
+    }
+
+    /**
+     * Copy which can be changed while this repository is read, polys are shared and tag indexes are copied.
+     */
+    public FlatFileRepository copy() {
+        FlatFileRepository copy = new FlatFileRepository();
+        copy.poly = poly;
+        copy.metadata = metadata;
+        copy.config = config;
+        copy.polyById = new ConcurrentHashMap<>(polyById);
+        read(() -> {
+            polyIndex.forEach((key, value) -> copy.polyIndex.put(key, value.copy()));
+            return null;
+        });
+        copy.sourceFiles = new HashMap<>(sourceFiles);
+        return copy;
+    }
+
+    private void rebuildIndex() {
+        Map<String, Map<String, Long>> entries = new HashMap<>();
+        polyById.forEach((id, poly) -> {
+            Collection<String> indexes = poly.fetch(INDEXES);
+            if (indexes == null) {
+                return;
+            }
+            long timestamp = timestamp(poly);
+            for (String index : indexes) {
+                entries.computeIfAbsent(index, key -> new HashMap<>()).put(id, timestamp);
+            }
+        });
+        Map<String, TagIndex> index = new ConcurrentHashMap<>();
+        entries.forEach((key, value) -> index.put(key, TagIndex.of(value)));
+        polyIndex = index;
+    }
 
     /**
      * Fetch polys by _id
@@ -46,6 +142,10 @@ public class FlatFileRepository {
      * Fetch polys from index by order
      */
     public BasicPolyList fetchIndexById(String index, List<Integer> ids) {
+        return read(() -> fetchIndexByIdUnlocked(index, ids));
+    }
+
+    private BasicPolyList fetchIndexByIdUnlocked(String index, List<Integer> ids) {
         BasicPolyList list = new BasicPolyList();
         List<String> polysById = polyIndex.get(index);
         if (polysById == null) {
@@ -65,47 +165,173 @@ public class FlatFileRepository {
     }
 
     /**
-     * Return all polys from index.
-     *
-     * @param index
-     * @return
+     * Fetch polys from index which follow cursor, cursor value is {@link #TIMESTAMP_KEY} of last returned poly.
+     * Result metadata holds {@link BasicPolyQuery#NEXT_CURSOR} when more polys can follow.
      */
-    public BasicPolyList fetchPolysFromIndex(String index) {
+    public BasicPolyList fetchIndexAfter(String index, QueryCursor cursor, int count) {
+        return read(() -> fetchIndexAfterUnlocked(index, cursor, count));
+    }
+
+    private BasicPolyList fetchIndexAfterUnlocked(String index, QueryCursor cursor, int count) {
         BasicPolyList list = new BasicPolyList();
-        List<String> polysById = polyIndex.get(index);
+        TagIndex polysById = polyIndex.get(index);
         if (polysById == null) {
             return list;
         }
-        polysById.forEach(polyId -> {
-            BasicPoly poly = polyById.get(polyId);
+        int start = cursor == null ? 0 : polysById.positionAfter(cursor.getValue(), cursor.getId());
+        int end = Math.min(start + count, polysById.size());
+        for (int i = start; i < end; i++) {
+            BasicPoly poly = polyById.get(polysById.get(i));
             if (poly != null) {
                 list.add(poly);
             }
-        });
+        }
+        if (end > start && end - start == count) {
+            String lastId = polysById.get(end - 1);
+            list.getMetadata().put(BasicPolyQuery.NEXT_CURSOR, new QueryCursor(timestamp(lastId), lastId).encode());
+        }
         return list;
     }
 
+    private long timestamp(String id) {
+        return timestamp(polyById.get(id));
+    }
+
+    private static long timestamp(BasicPoly poly) {
+        Number timestamp = poly.fetch(TIMESTAMP_KEY, 0L);
+        return timestamp.longValue();
+    }
+
     /**
-     * Add poly to index
+     * Return all polys from index.
+     *
+     * @param index
+     * @return
      */
-    public void add(BasicPoly basicPoly, Collection<String> indexes) {
+    public BasicPolyList fetchPolysFromIndex(String index) {
+        return read(() -> {
+            BasicPolyList list = new BasicPolyList();
+            List<String> polysById = polyIndex.get(index);
+            if (polysById == null) {
+                return list;
+            }
+            polysById.forEach(polyId -> {
+                BasicPoly poly = polyById.get(polyId);
+                if (poly != null) {
+                    list.add(poly);
+                }
+            });
+            return list;
+        });
+    }
+
+    /**
+     * Number of polys in index, 0 for missing index.
+     */
+    public int indexSize(String index) {
+        return read(() -> {
+            TagIndex ids = polyIndex.get(index);
+            return ids == null ? 0 : ids.size();
+        });
+    }
+
+    /**
+     * Number of polys in each index.
+     */
+    public Map<String, Integer> indexSizes() {
+        return read(() -> {
+            Map<String, Integer> sizes = new HashMap<>();
+            polyIndex.forEach((key, value) -> sizes.put(key, value.size()));
+            return sizes;
+        });
+    }
+
+    /**
+     * Distinct random ids of polys in index.
+     */
+    public List<String> randomIds(String index, int count) {
+        return read(() -> randomValues(polyIndex.get(index), count));
+    }
+
+    /**
+     * Stream polys without copying, polys added or removed during iteration may be skipped.
+     */
+    public Stream<BasicPoly> stream() {
+        return polyById.values().stream();
+    }
+
+    /**
+     * Values at distinct random positions of list, up to count of them. Thread local generator is used, shared one would be contended by readers.
+     */
+    public static List<String> randomValues(List<String> values, int count) {
+        List<String> result = new ArrayList<>();
+        if (values == null || values.isEmpty()) {
+            return result;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<Integer> positions = new LinkedHashSet<>();
+        while (positions.size() < Math.min(count, values.size())) {
+            positions.add(random.nextInt(values.size()));
+        }
+        positions.forEach(position -> result.add(values.get(position)));
+        return result;
+    }
+
+    /**
+     * Put indexes and timestamp into poly as {@link #add(BasicPoly, Collection)} does, polys can be journaled before they are added.
+     */
+    public static BasicPoly prepare(BasicPoly basicPoly, Collection<String> indexes) {
         basicPoly.put(INDEXES, indexes);
         if (!basicPoly.containsKey(TIMESTAMP_KEY)) {
             basicPoly.put(TIMESTAMP_KEY, System.nanoTime());
         }
+        return basicPoly;
+    }
+
+    /**
+     * Add poly to index
+     */
+    public void add(BasicPoly basicPoly, Collection<String> indexes) {
+        prepare(basicPoly, indexes);
         polyById.put(basicPoly._id(), basicPoly);
-        for (String index : indexes) {
-            polyIndex.putIfAbsent(index, new ArrayList<>());
-            List<String> list = polyIndex.get(index);
-            if (list.contains(basicPoly._id())) {
-                continue;
+        if (bulkLoad) {
+            return;
+        }
+        long timestamp = timestamp(basicPoly);
+        write(() -> {
+            for (String index : indexes) {
+                polyIndex.computeIfAbsent(index, key -> new TagIndex()).put(basicPoly._id(), timestamp);
+            }
+        });
+    }
+
+    /**
+     * Add poly loaded from source file, poly previously loaded from the same file is replaced.
+     */
+    public void add(BasicPoly basicPoly, Collection<String> indexes, String source) {
+        String previous = sourceFiles.put(source, basicPoly._id());
+        if (!bulkLoad) {
+            // tags of changed poly may differ, so it is removed from all of them first
+            if (previous != null) {
+                remove(previous);
+            }
+            remove(basicPoly._id());
+        }
+        add(basicPoly, indexes);
+    }
+
+    /**
+     * Remove polys loaded from source file or from files under source directory.
+     */
+    public void removeSource(String source) {
+        String prefix = source + "/";
+        Iterator<Map.Entry<String, String>> iterator = sourceFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().equals(source) || entry.getKey().startsWith(prefix)) {
+                remove(entry.getValue());
+                iterator.remove();
             }
-            list.add(basicPoly._id());
-            list.sort((o1, o2) -> {
-                Number t1 = polyById.get(o1).fetch(TIMESTAMP_KEY, 0L);
-                Number t2 = polyById.get(o2).fetch(TIMESTAMP_KEY, 0L);
-                return Long.compare(t2.longValue(), t1.longValue());
-            });
         }
     }
 
@@ -118,14 +344,36 @@ public class FlatFileRepository {
             return;
         }
         Collection<String> indexes = basicPoly.fetch(INDEXES);
-        for (String index : indexes) {
-            List<String> list = polyIndex.get(index);
-            if (list == null) {
-                continue;
+        write(() -> {
+            for (String index : indexes) {
+                TagIndex list = polyIndex.get(index);
+                if (list == null) {
+                    continue;
+                }
+                list.removeId(id);
             }
-            list.remove(id);
-        }
+        });
         polyById.remove(id);
     }
 
+    private <T> T read(Supplier<T> reader) {
+        Lock lock = indexLock.readLock();
+        lock.lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(Runnable writer) {
+        Lock lock = indexLock.writeLock();
+        lock.lock();
+        try {
+            writer.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
 }
@@ -0,0 +1,110 @@
+package com.unidev.polydata4.flatfiles;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.unidev.polydata4.domain.BasicPoly;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming read and write of {@link FlatFileRepository}, polys are processed one at a time.
+ * Format is the same as of data binding: stored tag lists are skipped on read and index is built once from tags of polys.
+ * Polys are read and written with codec of parser or generator.
+ */
+public final class FlatFileRepositoryCodec {
+
+    private static final TypeReference<HashMap<String, String>> SOURCE_FILES_TYPE = new TypeReference<>() {
+    };
+
+    private FlatFileRepositoryCodec() {
+    }
+
+    /**
+     * Read repository object, parser is left on its end token.
+     */
+    public static FlatFileRepository read(JsonParser parser) throws IOException {
+        if (!parser.hasCurrentToken()) {
+            parser.nextToken();
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected repository object, found " + parser.currentToken());
+        }
+        FlatFileRepository repository = new FlatFileRepository();
+        repository.startBulkLoad();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "poly":
+                    repository.setPoly(parser.getText());
+                    break;
+                case "metadata":
+                    repository.setMetadata(parser.readValueAs(BasicPoly.class));
+                    break;
+                case "config":
+                    repository.setConfig(parser.readValueAs(BasicPoly.class));
+                    break;
+                case "polyById":
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String id = parser.getCurrentName();
+                        if (parser.nextToken() != JsonToken.VALUE_NULL) {
+                            repository.getPolyById().put(id, parser.readValueAs(BasicPoly.class));
+                        }
+                    }
+                    break;
+                case "sourceFiles":
+                    repository.setSourceFiles(parser.readValueAs(SOURCE_FILES_TYPE));
+                    break;
+                default:
+                    // polyIndex and unknown fields
+                    parser.skipChildren();
+            }
+        }
+        repository.finishBulkLoad();
+        return repository;
+    }
+
+    /**
+     * Write repository object, null fields are omitted.
+     */
+    public static void write(JsonGenerator generator, FlatFileRepository repository) throws IOException {
+        generator.writeStartObject();
+        if (repository.getPoly() != null) {
+            generator.writeStringField("poly", repository.getPoly());
+        }
+        if (repository.getMetadata() != null) {
+            generator.writeObjectField("metadata", repository.getMetadata());
+        }
+        if (repository.getConfig() != null) {
+            generator.writeObjectField("config", repository.getConfig());
+        }
+        generator.writeObjectFieldStart("polyById");
+        for (Map.Entry<String, BasicPoly> entry : repository.getPolyById().entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeObject(entry.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("polyIndex");
+        for (Map.Entry<String, TagIndex> entry : repository.getPolyIndex().entrySet()) {
+            generator.writeArrayFieldStart(entry.getKey());
+            for (String id : entry.getValue()) {
+                generator.writeString(id);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        if (!repository.getSourceFiles().isEmpty()) {
+            generator.writeObjectField("sourceFiles", repository.getSourceFiles());
+        }
+        generator.writeEndObject();
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.unidev.polydata4.flatfiles;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of {@link FlatFileRepository}, used to skip parsing of source files on start.
+ * Snapshot is two Smile documents: sizes and modification times of source files, followed by repository.
+ * Repository is read only when all source files match, snapshot file is read through memory mapping.
+ */
+@Slf4j
+public final class FlatFileSnapshot {
+
+    public static final String EXTENSION = ".snapshot";
+
+    // null _id of polys without id is not written, so it is not put into poly data on read
+    static final ObjectMapper MAPPER = new ObjectMapper(new SmileFactory())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static final TypeReference<List<SourceFile>> SOURCES_TYPE = new TypeReference<>() {
+    };
+
+    private FlatFileSnapshot() {
+    }
+
+    /**
+     * Read repository from snapshot, empty when snapshot is missing, corrupted or any source file changed.
+     */
+    public static Optional<FlatFileRepository> read(File snapshot, Collection<File> sources) {
+        if (!snapshot.isFile()) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (JsonParser parser = MAPPER.getFactory().createParser(new ByteBufferBackedInputStream(buffer))) {
+                parser.nextToken();
+                List<SourceFile> storedSources = MAPPER.readValue(parser, SOURCES_TYPE);
+                if (!storedSources.equals(fingerprint(sources))) {
+                    log.info("Snapshot {} is outdated", snapshot.getPath());
+                    return Optional.empty();
+                }
+                parser.nextToken();
+                return Optional.of(FlatFileRepositoryCodec.read(parser));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read snapshot {}", snapshot.getPath(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Write snapshot of repository loaded from source files, snapshot is replaced atomically.
+     */
+    public static void write(File snapshot, Collection<File> sources, FlatFileRepository repository) {
+        Path target = snapshot.toPath();
+        Path tmp = target.resolveSibling(snapshot.getName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+                generator.writeObject(fingerprint(sources));
+                FlatFileRepositoryCodec.write(generator, repository);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write snapshot {}", snapshot.getPath(), e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                log.warn("Failed to remove {}", tmp, ex);
+            }
+        }
+    }
+
+    static List<SourceFile> fingerprint(Collection<File> sources) {
+        List<SourceFile> files = new ArrayList<>(sources.size());
+        for (File source : sources) {
+            files.add(new SourceFile(source.getAbsolutePath(), source.length(), source.lastModified()));
+        }
+        files.sort(Comparator.comparing(SourceFile::getPath));
+        return files;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SourceFile {
+        private String path;
+        private long size;
+        private long modified;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.unidev.polydata4.flatfiles;
+
+import lombok.Builder;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Timings of loading one poly directory.
+ */
+@Value
+@Builder
+@ToString
+public class PolyLoadReport {
+
+    String poly;
+
+    int files;
+
+    int failedFiles;
+
+    /**
+     * Poly was loaded from binary snapshot, parse and index times are 0.
+     */
+    boolean snapshot;
+
+    /**
+     * Wall time of reading and parsing data files.
+     */
+    long parseMillis;
+
+    /**
+     * Time of adding parsed polys to repository and building tag indexes.
+     */
+    long indexMillis;
+
+    long totalMillis;
+
+}
@@ -1,31 +1,47 @@
 package com.unidev.polydata4.flatfiles;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.unidev.platform.Randoms;
 import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.domain.*;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
- * Polydata storage in single JSON file
+ * Polydata storage in single JSON file.
+ * Changes are appended to journal of each poly and periodically compacted into JSON file, journal is replayed on load.
  */
 @RequiredArgsConstructor
 @Slf4j
 public class PolydataSingleJson extends AbstractPolydata {
 
     public static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String POLY_EXTENSION = ".poly.json";
     private static final String[] POLY_EXTENSIONS = new String[]{"poly.json"};
+    private static final String JOURNAL_EXTENSION = ".poly" + FlatFileJournal.EXTENSION;
+    private static final String[] JOURNAL_EXTENSIONS = new String[]{
+            JOURNAL_EXTENSION.substring(1), JOURNAL_EXTENSION.substring(1) + FlatFileJournal.ROTATED_EXTENSION};
 
     @Getter
     private final File rootDir;
@@ -33,7 +49,42 @@ public class PolydataSingleJson extends AbstractPolydata {
     // poly -> repository of items
     @Getter
     private final Map<String, FlatFileRepository> repositories = new ConcurrentHashMap<>();
-    private final Randoms randoms = new Randoms();
+
+    /**
+     * Keep binary snapshot next to each JSON file, unchanged files are loaded from snapshot.
+     */
+    @Getter
+    @Setter
+    private boolean snapshots = false;
+
+    /**
+     * Append changes to journal, without journal polys are written only on close.
+     */
+    @Getter
+    @Setter
+    private boolean journal = true;
+
+    /**
+     * Force each journal write to disk, without sync written changes survive process crash but not power loss.
+     */
+    @Getter
+    @Setter
+    private boolean journalSync = false;
+
+    /**
+     * Interval of background compaction of journals into JSON files, 0 compacts only on close.
+     */
+    @Getter
+    @Setter
+    private long compactionIntervalSeconds = 60;
+
+    private final Map<String, FlatFileJournal> journals = new ConcurrentHashMap<>();
+    /**
+     * Writers of each dataset, journal writes of dataset are serialized with its lock.
+     */
+    private final Map<String, ReentrantLock> writeLocks = new ConcurrentHashMap<>();
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private ScheduledExecutorService compactor;
 
     private static Set<String> buildTagIndex(InsertRequest request) {
         Set<String> indexToPersist = request.getIndexToPersist();
@@ -49,15 +100,133 @@ public class PolydataSingleJson extends AbstractPolydata {
     public void prepareStorage() {
         FileUtils.listFiles(rootDir, POLY_EXTENSIONS, true).forEach(file -> {
             log.info("Loading {}", file.getName());
+            String key = StringUtils.removeEnd(file.getName(), POLY_EXTENSION);
+            File snapshot = snapshotFile(file);
+            Optional<FlatFileRepository> snapshotRepository = snapshots ? FlatFileSnapshot.read(snapshot, List.of(file)) : Optional.empty();
+            if (snapshotRepository.isPresent()) {
+                repositories.put(key, snapshotRepository.get());
+                return;
+            }
             try {
-                FlatFileRepository repository = MAPPER.readValue(file, FlatFileRepository.class);
-                String key = FilenameUtils.getBaseName(file.getName());
+                FlatFileRepository repository = read(file);
                 repositories.put(key, repository);
+                if (snapshots) {
+                    FlatFileSnapshot.write(snapshot, List.of(file), repository);
+                }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
+        if (!journal) {
+            return;
+        }
+
+        // rotated entries of interrupted compaction go before current ones, replay of entries is idempotent
+        List<File> journalFiles = new ArrayList<>(FileUtils.listFiles(rootDir, JOURNAL_EXTENSIONS, false));
+        journalFiles.sort(Comparator.comparing(file -> !file.getName().endsWith(FlatFileJournal.ROTATED_EXTENSION)));
+        for (File journalFile : journalFiles) {
+            String key = StringUtils.substringBeforeLast(journalFile.getName(), JOURNAL_EXTENSION);
+            FlatFileRepository repository = repositories.computeIfAbsent(key, k -> new FlatFileRepository());
+            int entries = FlatFileJournal.replay(journalFile, entry -> entry.apply(repository));
+            log.info("Replayed {} journal entries of {}", entries, key);
+            // replayed entries are compacted with the next changes
+            journal(key);
+        }
+        if (compactionIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "polydata-json-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactAll, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private FlatFileJournal journal(String dataset) {
+        return journals.computeIfAbsent(dataset, key -> new FlatFileJournal(journalFile(key), journalSync));
+    }
 
+    private ReentrantLock writeLock(String dataset) {
+        return writeLocks.computeIfAbsent(dataset, key -> new ReentrantLock());
+    }
+
+    /**
+     * Write entries to journal before they are applied to repository, caller holds write lock of dataset.
+     */
+    private void append(String dataset, List<FlatFileJournal.Entry> entries) {
+        if (journal) {
+            journal(dataset).append(entries);
+        }
+    }
+
+    private void compactAll() {
+        for (String dataset : journals.keySet()) {
+            try {
+                compact(dataset);
+            } catch (RuntimeException e) {
+                log.error("Failed to compact {}", dataset, e);
+            }
+        }
+    }
+
+    /**
+     * Write journaled changes of poly to JSON file.
+     * Repository is copied and journal rotated under write lock of dataset, JSON is written to temporary file outside of lock
+     * and moved over previous one, rotated entries are dropped after that.
+     */
+    public void compact(String dataset) {
+        compactLock.lock();
+        try {
+            compactJournal(dataset);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    private void compactJournal(String dataset) {
+        FlatFileJournal datasetJournal = journals.get(dataset);
+        FlatFileRepository repository = repositories.get(dataset);
+        if (datasetJournal == null || repository == null || datasetJournal.isEmpty()) {
+            return;
+        }
+        FlatFileRepository copy;
+        ReentrantLock lock = writeLock(dataset);
+        lock.lock();
+        try {
+            copy = repository.copy();
+            datasetJournal.rotate();
+        } finally {
+            lock.unlock();
+        }
+        File file = jsonFile(dataset);
+        write(file, copy);
+        datasetJournal.compacted();
+        log.info("Compacted journal of {}", dataset);
+    }
+
+    /**
+     * Stream repository from file, peak memory is close to size of loaded repository.
+     */
+    private static FlatFileRepository read(File file) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(file)) {
+            return FlatFileRepositoryCodec.read(parser);
+        }
+    }
+
+    private void write(File file, FlatFileRepository repository) {
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            try (JsonGenerator generator = MAPPER.getFactory().createGenerator(tmp.toFile(), JsonEncoding.UTF8)) {
+                FlatFileRepositoryCodec.write(generator, repository);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (snapshots) {
+            FlatFileSnapshot.write(snapshotFile(file), List.of(file), repository);
+        }
     }
 
     @Override
@@ -69,6 +238,9 @@ public class PolydataSingleJson extends AbstractPolydata {
 
         FlatFileRepository repository = new FlatFileRepository();
         repositories.put(dataset, repository);
+        if (journal) {
+            journal(dataset);
+        }
 
         BasicPoly config = new BasicPoly();
         config._id(CONFIG_KEY);
@@ -97,7 +269,15 @@ public class PolydataSingleJson extends AbstractPolydata {
         if (!exists(dataset)) {
             throw new RuntimeException("Poly " + dataset + " does not exists");
         }
-        repositories.get(dataset).setConfig(config);
+        FlatFileRepository repository = repositories.get(dataset);
+        ReentrantLock lock = writeLock(dataset);
+        lock.lock();
+        try {
+            append(dataset, List.of(FlatFileJournal.Entry.config(config)));
+            repository.setConfig(config);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -113,7 +293,15 @@ public class PolydataSingleJson extends AbstractPolydata {
         if (!exists(dataset)) {
             throw new RuntimeException("Poly " + dataset + " does not exists");
         }
-        repositories.get(dataset).setMetadata(metadata);
+        FlatFileRepository repository = repositories.get(dataset);
+        ReentrantLock lock = writeLock(dataset);
+        lock.lock();
+        try {
+            append(dataset, List.of(FlatFileJournal.Entry.metadata(metadata)));
+            repository.setMetadata(metadata);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -122,7 +310,7 @@ public class PolydataSingleJson extends AbstractPolydata {
             return Optional.empty();
         }
         BasicPoly index = new BasicPoly();
-        repositories.get(dataset).getPolyIndex().forEach((key, value) -> index.put(key, BasicPoly.newPoly(key).with("count", value.size())));
+        repositories.get(dataset).indexSizes().forEach((key, size) -> index.put(key, BasicPoly.newPoly(key).with("count", size)));
         return Optional.of(index);
     }
 
@@ -138,16 +326,31 @@ public class PolydataSingleJson extends AbstractPolydata {
     public BasicPolyList insert(String dataset, InsertOptions insertOptions, Collection<InsertRequest> insertRequests) {
         BasicPolyList list = new BasicPolyList();
         FlatFileRepository repository = repositories.get(dataset);
+        List<FlatFileJournal.Entry> entries = new ArrayList<>(insertRequests.size());
         insertRequests.forEach(request -> {
             BasicPoly data = request.getData();
-            String id = data._id();
-            repository.remove(id);
-            repository.fetchById(Set.of(id)).polyById(id).ifPresent(list::add);
-            if (!insertOptions.isSkipIndex()) {
+            if (insertOptions.isSkipIndex()) {
+                entries.add(FlatFileJournal.Entry.remove(data._id()));
+            } else {
                 Set<String> tags = buildTagIndex(request);
-                repository.add(data, tags);
+                entries.add(FlatFileJournal.Entry.put(FlatFileRepository.prepare(data, tags), tags));
             }
         });
+        ReentrantLock lock = writeLock(dataset);
+        lock.lock();
+        try {
+            append(dataset, entries);
+            entries.forEach(entry -> {
+                String id = entry.getId();
+                repository.remove(id);
+                repository.fetchById(Set.of(id)).polyById(id).ifPresent(list::add);
+                if (entry.getOperation() == FlatFileJournal.Operation.PUT) {
+                    repository.add(entry.getPoly(), entry.getTags());
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
         return list;
     }
 
@@ -171,9 +374,16 @@ public class PolydataSingleJson extends AbstractPolydata {
     public BasicPolyList remove(String dataset, Set<String> ids) {
         FlatFileRepository repository = repositories.get(dataset);
         BasicPolyList list = read(dataset, ids);
-        ids.forEach(id -> {
-            repository.remove(id);
-        });
+        List<FlatFileJournal.Entry> entries = new ArrayList<>(ids.size());
+        ids.forEach(id -> entries.add(FlatFileJournal.Entry.remove(id)));
+        ReentrantLock lock = writeLock(dataset);
+        lock.lock();
+        try {
+            append(dataset, entries);
+            ids.forEach(repository::remove);
+        } finally {
+            lock.unlock();
+        }
         return list;
     }
 
@@ -197,11 +407,14 @@ public class PolydataSingleJson extends AbstractPolydata {
         Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
 
         if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
-            List<String> indexes = repositories.get(dataset).getPolyIndex().get(index);
             int randomCount = query.option(RANDOM_COUNT, itemPerPage);
-            List<String> randomIds = randoms.randomValues(indexes, randomCount);
+            List<String> randomIds = repositories.get(dataset).randomIds(index, randomCount);
             return read(dataset, new HashSet<>(randomIds));
         }
+        if (query.queryType() == BasicPolyQuery.QueryFunction.CURSOR) {
+            QueryCursor cursor = QueryCursor.decode(query.cursor()).orElse(null);
+            return repositories.get(dataset).fetchIndexAfter(index, cursor, itemPerPage);
+        }
         final int page = query.page() < 0 ? 0 : query.page();
         List<Integer> ids = new ArrayList<>();
         for (int i = page * itemPerPage; i < (page + 1) * itemPerPage; i++) {
@@ -223,11 +436,16 @@ public class PolydataSingleJson extends AbstractPolydata {
         if (!StringUtils.isBlank(queryIndex)) {
             index = queryIndex;
         }
-        List<String> ids = repositories.get(dataset).getPolyIndex().get(index);
-        if (CollectionUtils.isEmpty(ids)) {
-            return 0L;
+        return (long) repositories.get(dataset).indexSize(index);
+    }
+
+    @Override
+    public Stream<BasicPoly> stream(String dataset, int fetchSize) {
+        FlatFileRepository repository = repositories.get(dataset);
+        if (repository == null) {
+            return Stream.empty();
         }
-        return (long) ids.size();
+        return repository.stream();
     }
 
     @Override
@@ -244,16 +462,36 @@ public class PolydataSingleJson extends AbstractPolydata {
 
     @Override
     public void close() throws IOException {
-        repositories.entrySet().forEach(entry -> {
-            String key = entry.getKey();
-            FlatFileRepository repository = entry.getValue();
-            File file = new File(rootDir, key + ".poly.json");
+        if (!journal) {
+            repositories.forEach((key, repository) -> write(jsonFile(key), repository));
+            return;
+        }
+        if (compactor != null) {
+            compactor.shutdown();
             try {
-                MAPPER.writeValue(file, repository);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
+            compactor = null;
+        }
+        // polys without journaled changes are already in their files
+        compactAll();
+        for (FlatFileJournal datasetJournal : journals.values()) {
+            datasetJournal.close();
+        }
+        journals.clear();
+    }
+
+    private File jsonFile(String dataset) {
+        return new File(rootDir, dataset + POLY_EXTENSION);
+    }
+
+    private File journalFile(String dataset) {
+        return new File(rootDir, dataset + JOURNAL_EXTENSION);
+    }
 
+    private static File snapshotFile(File jsonFile) {
+        return new File(jsonFile.getParentFile(), StringUtils.removeEnd(jsonFile.getName(), ".json") + FlatFileSnapshot.EXTENSION);
     }
 }
@@ -2,20 +2,28 @@ package com.unidev.polydata4.flatfiles;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import com.unidev.platform.Randoms;
 import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.domain.*;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Polydata storage backed by Yaml files. Read only storage.
@@ -27,6 +35,7 @@ public class PolydataYaml extends AbstractPolydata {
     public static final String DATE_INDEX = "_date";
     public static final String DATA_DIR = "data";
     public static final String POLY_FILE = "polydata.yaml";
+    public static final String SNAPSHOT_FILE = "polydata" + FlatFileSnapshot.EXTENSION;
     public static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
     private static final String[] POLY_EXTENSIONS = new String[]{"yaml", "yml"};
 
@@ -40,7 +49,42 @@ public class PolydataYaml extends AbstractPolydata {
     // poly -> repository of items
     @Getter
     private final Map<String, FlatFileRepository> repositories = new ConcurrentHashMap<>();
-    private final Randoms randoms = new Randoms();
+
+    /**
+     * Threads used to parse poly directories and files, 1 loads everything in the calling thread.
+     */
+    @Getter
+    @Setter
+    private int loadThreads = 1;
+
+    /**
+     * Keep binary snapshot of each poly in its directory, unchanged polys are loaded from snapshot instead of YAML files.
+     */
+    @Getter
+    @Setter
+    private boolean snapshots = false;
+
+    /**
+     * Watch data directories after load and apply created, changed and deleted files without restart.
+     */
+    @Getter
+    @Setter
+    private boolean watch = false;
+
+    /**
+     * Time to wait for more file events before changes are applied.
+     */
+    @Getter
+    @Setter
+    private long watchDelayMillis = 200;
+
+    private volatile PolydataYamlWatcher watcher;
+
+    /**
+     * Timings of the last load of each poly.
+     */
+    @Getter
+    private final Map<String, PolyLoadReport> loadReports = new ConcurrentHashMap<>();
 
     /**
      * Scan root directory for polys
@@ -52,10 +96,16 @@ public class PolydataYaml extends AbstractPolydata {
         if (files == null) {
             return;
         }
-        for (File file : files) {
-            if (file.isDirectory()) {
-                loadPoly(file);
-            }
+        List<File> polyDirs = Arrays.stream(files).filter(File::isDirectory).collect(Collectors.toList());
+        if (loadThreads <= 1) {
+            polyDirs.forEach(polyDir -> loadPoly(polyDir, false));
+        } else {
+            inLoadPool(() -> ForkJoinTask.invokeAll(polyDirs.stream()
+                    .map(polyDir -> ForkJoinTask.adapt(() -> loadPoly(polyDir, true)))
+                    .collect(Collectors.toList())));
+        }
+        if (watch && watcher == null) {
+            watcher = new PolydataYamlWatcher(this, watchDelayMillis);
         }
     }
 
@@ -65,12 +115,45 @@ public class PolydataYaml extends AbstractPolydata {
      * @param polyDir
      */
     public void loadPoly(File polyDir) {
+        if (loadThreads <= 1) {
+            loadPoly(polyDir, false);
+        } else {
+            inLoadPool(() -> loadPoly(polyDir, true));
+        }
+    }
+
+    /**
+     * Parse data files, in parallel when called from load pool, and add them to new repository with single index build.
+     */
+    private void loadPoly(File polyDir, boolean parallel) {
         log.info("Loading poly {}", polyDir.getName());
+        long start = System.nanoTime();
+        File polyFile = new File(polyDir, POLY_FILE);
+        File dataDir = new File(polyDir, DATA_DIR);
+        // poly directory can be created before its data directory
+        List<File> dataFiles = dataDir.isDirectory() ? new ArrayList<>(FileUtils.listFiles(dataDir, POLY_EXTENSIONS, true)) : new ArrayList<>();
+        List<File> sources = sources(polyDir, dataFiles);
+        File snapshot = new File(polyDir, SNAPSHOT_FILE);
+        if (snapshots) {
+            // snapshots written before source files were tracked can't apply single file changes, they are rebuilt
+            Optional<FlatFileRepository> snapshotRepository = FlatFileSnapshot.read(snapshot, sources)
+                    .filter(repository -> dataFiles.isEmpty() || !repository.getSourceFiles().isEmpty());
+            if (snapshotRepository.isPresent()) {
+                repositories.put(polyDir.getName(), snapshotRepository.get());
+                report(PolyLoadReport.builder()
+                        .poly(polyDir.getName())
+                        .files(dataFiles.size())
+                        .snapshot(true)
+                        .totalMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                        .build());
+                return;
+            }
+        }
+
         FlatFileRepository flatFileRepository = new FlatFileRepository();
         flatFileRepository.setPoly(polyDir.getName());
 
         // load poly file
-        File polyFile = new File(polyDir, POLY_FILE);
         if (polyFile.exists()) {
             try {
                 FlatFile flatFile = MAPPER.readValue(polyFile, FlatFile.class);
@@ -81,27 +164,140 @@ public class PolydataYaml extends AbstractPolydata {
             }
         }
 
-        // scan for YAMLs and load to poly
-        for (File file : FileUtils.listFiles(new File(polyDir, DATA_DIR), POLY_EXTENSIONS, true)) {
-            log.info("Loading file {}", file.getPath());
-            try {
-                FlatFile flatFile = MAPPER.readValue(file, FlatFile.class);
-                BasicPoly poly = flatFile.toPoly();
-                List<String> index = null;
-                if (flatFile.metadata() != null) {
-                    index = flatFile.metadata().getIndex();
+        // parse YAMLs, files are kept in listing order
+        List<FlatFile> flatFiles;
+        if (parallel) {
+            List<ForkJoinTask<FlatFile>> tasks = dataFiles.stream()
+                    .map(file -> ForkJoinTask.adapt(() -> readFile(file)))
+                    .collect(Collectors.toList());
+            flatFiles = ForkJoinTask.invokeAll(tasks).stream().map(ForkJoinTask::join).collect(Collectors.toList());
+        } else {
+            flatFiles = dataFiles.stream().map(this::readFile).collect(Collectors.toList());
+        }
+        long parsed = System.nanoTime();
+
+        // tags are sorted once after all polys are added
+        int failedFiles = 0;
+        flatFileRepository.startBulkLoad();
+        for (int i = 0; i < flatFiles.size(); i++) {
+            FlatFile flatFile = flatFiles.get(i);
+            if (flatFile == null) {
+                failedFiles++;
+                continue;
+            }
+            add(flatFileRepository, flatFile, source(dataDir.toPath(), dataFiles.get(i).toPath()));
+        }
+        flatFileRepository.finishBulkLoad();
+        long indexed = System.nanoTime();
+
+        repositories.put(polyDir.getName(), flatFileRepository);
+        if (snapshots && failedFiles == 0) {
+            FlatFileSnapshot.write(snapshot, sources, flatFileRepository);
+        }
+        report(PolyLoadReport.builder()
+                .poly(polyDir.getName())
+                .files(dataFiles.size())
+                .failedFiles(failedFiles)
+                .parseMillis(TimeUnit.NANOSECONDS.toMillis(parsed - start))
+                .indexMillis(TimeUnit.NANOSECONDS.toMillis(indexed - parsed))
+                .totalMillis(TimeUnit.NANOSECONDS.toMillis(indexed - start))
+                .build());
+    }
+
+    /**
+     * Apply created, changed and deleted data files of poly to a copy of its repository and publish the copy at once,
+     * readers keep using previous repository until all files are applied.
+     * Files which fail to parse keep previous version of their poly.
+     */
+    synchronized void reloadFiles(File polyDir, Collection<Path> files) {
+        FlatFileRepository current = repositories.get(polyDir.getName());
+        if (current == null) {
+            loadPoly(polyDir);
+            return;
+        }
+        long start = System.nanoTime();
+        Path dataDir = new File(polyDir, DATA_DIR).toPath();
+        FlatFileRepository repository = current.copy();
+        int changedFiles = 0;
+        int failedFiles = 0;
+        for (Path file : files) {
+            String source = source(dataDir, file);
+            if (Files.isRegularFile(file)) {
+                if (!FilenameUtils.isExtension(file.getFileName().toString(), POLY_EXTENSIONS)) {
+                    continue;
                 }
-                if (index == null) {
-                    index = new ArrayList<>();
+                FlatFile flatFile = readFile(file.toFile());
+                if (flatFile == null) {
+                    failedFiles++;
+                    continue;
                 }
-                flatFileRepository.add(poly, index);
-            } catch (IOException e) {
-                log.error("Failed to load file {}", file.getName(), e);
+                add(repository, flatFile, source);
+                changedFiles++;
+            } else if (!Files.exists(file)) {
+                repository.removeSource(source);
+                changedFiles++;
             }
+        }
+        repositories.put(polyDir.getName(), repository);
+        log.info("Reloaded poly {}: {} files changed, {} failed, {} ms", polyDir.getName(), changedFiles, failedFiles,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (snapshots && failedFiles == 0) {
+            List<File> dataFiles = new ArrayList<>(FileUtils.listFiles(dataDir.toFile(), POLY_EXTENSIONS, true));
+            FlatFileSnapshot.write(new File(polyDir, SNAPSHOT_FILE), sources(polyDir, dataFiles), repository);
+        }
+    }
 
+    private static void add(FlatFileRepository repository, FlatFile flatFile, String source) {
+        List<String> index = null;
+        if (flatFile.metadata() != null) {
+            index = flatFile.metadata().getIndex();
+        }
+        if (index == null) {
+            index = new ArrayList<>();
         }
+        repository.add(flatFile.toPoly(), index, source);
+    }
 
-        repositories.put(polyDir.getName(), flatFileRepository);
+    private static List<File> sources(File polyDir, List<File> dataFiles) {
+        List<File> sources = new ArrayList<>(dataFiles);
+        File polyFile = new File(polyDir, POLY_FILE);
+        if (polyFile.exists()) {
+            sources.add(polyFile);
+        }
+        return sources;
+    }
+
+    private static String source(Path dataDir, Path file) {
+        return FilenameUtils.separatorsToUnix(dataDir.relativize(file).toString());
+    }
+
+    private void report(PolyLoadReport report) {
+        loadReports.put(report.getPoly(), report);
+        log.info("Loaded poly {}: {} files, {} failed, from snapshot {}, parse {} ms, index {} ms, total {} ms",
+                report.getPoly(), report.getFiles(), report.getFailedFiles(), report.isSnapshot(),
+                report.getParseMillis(), report.getIndexMillis(), report.getTotalMillis());
+    }
+
+    /**
+     * Read data file, failed files are logged and returned as null.
+     */
+    private FlatFile readFile(File file) {
+        log.debug("Loading file {}", file.getPath());
+        try {
+            return MAPPER.readValue(file, FlatFile.class);
+        } catch (IOException e) {
+            log.error("Failed to load file {}", file.getName(), e);
+            return null;
+        }
+    }
+
+    private void inLoadPool(Runnable load) {
+        ForkJoinPool pool = new ForkJoinPool(loadThreads);
+        try {
+            pool.invoke(ForkJoinTask.adapt(load));
+        } finally {
+            pool.shutdown();
+        }
     }
 
     @Override
@@ -148,7 +344,7 @@ public class PolydataYaml extends AbstractPolydata {
             return Optional.empty();
         }
         BasicPoly index = new BasicPoly();
-        repositories.get(dataset).getPolyIndex().forEach((key, value) -> index.put(key, BasicPoly.newPoly(key).with("_count", value.size())));
+        repositories.get(dataset).indexSizes().forEach((key, size) -> index.put(key, BasicPoly.newPoly(key).with("_count", size)));
         return Optional.of(index);
     }
 
@@ -206,12 +402,17 @@ public class PolydataYaml extends AbstractPolydata {
 
         Integer defaultItemPerPage = config.fetch(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
         Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
+        // single repository is used through the query, watcher may publish new one meanwhile
+        FlatFileRepository repository = repositories.get(dataset);
 
         if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
-            List<String> indexes = repositories.get(dataset).getPolyIndex().get(index);
             int randomCount = query.option(RANDOM_COUNT, itemPerPage);
-            List<String> randomIds = randoms.randomValues(indexes, randomCount);
-            return read(dataset, new HashSet<>(randomIds));
+            List<String> randomIds = repository.randomIds(index, randomCount);
+            return repository.fetchById(new HashSet<>(randomIds));
+        }
+        if (query.queryType() == BasicPolyQuery.QueryFunction.CURSOR) {
+            QueryCursor cursor = QueryCursor.decode(query.cursor()).orElse(null);
+            return repository.fetchIndexAfter(index, cursor, itemPerPage);
         }
         final int page = query.page() < 0 ? 0 : query.page();
         List<Integer> ids = new ArrayList<>();
@@ -219,7 +420,7 @@ public class PolydataYaml extends AbstractPolydata {
             ids.add(i);
         }
 
-        return repositories.get(dataset).fetchIndexById(index, ids);
+        return repository.fetchIndexById(index, ids);
     }
 
     @Override
@@ -234,11 +435,16 @@ public class PolydataYaml extends AbstractPolydata {
         if (!StringUtils.isBlank(queryIndex)) {
             index = queryIndex;
         }
-        List<String> ids = repositories.get(dataset).getPolyIndex().get(index);
-        if (CollectionUtils.isEmpty(ids)) {
-            return 0L;
+        return (long) repositories.get(dataset).indexSize(index);
+    }
+
+    @Override
+    public Stream<BasicPoly> stream(String dataset, int fetchSize) {
+        FlatFileRepository repository = repositories.get(dataset);
+        if (repository == null) {
+            return Stream.empty();
         }
-        return (long) ids.size();
+        return repository.stream();
     }
 
     @Override
@@ -255,6 +461,10 @@ public class PolydataYaml extends AbstractPolydata {
 
     @Override
     public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
 
     }
 }
@@ -0,0 +1,220 @@
+package com.unidev.polydata4.flatfiles;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches data directories of {@link PolydataYaml} polys and passes changed files to {@link PolydataYaml#reloadFiles(File, Collection)}.
+ * Root and poly directories are watched too: new polys, new data directories and changes of poly file load whole poly.
+ * Events which arrive within delay of each other are applied as one batch, so a poly is published once per burst of writes.
+ */
+@Slf4j
+class PolydataYamlWatcher implements Closeable {
+
+    private final PolydataYaml polydata;
+    private final Path rootDir;
+    private final long delayMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    PolydataYamlWatcher(PolydataYaml polydata, long delayMillis) {
+        this.polydata = polydata;
+        this.rootDir = polydata.getRootDir().toPath();
+        this.delayMillis = delayMillis;
+        try {
+            watchService = rootDir.getFileSystem().newWatchService();
+            register(rootDir);
+            File[] polyDirs = polydata.getRootDir().listFiles(File::isDirectory);
+            if (polyDirs != null) {
+                for (File polyDir : polyDirs) {
+                    registerPoly(polyDir.toPath());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        thread = new Thread(this::run, "polydata-yaml-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void register(Path dir) throws IOException {
+        directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+    }
+
+    /**
+     * Register poly directory and its data directory if it exists.
+     */
+    private void registerPoly(Path polyDir) throws IOException {
+        register(polyDir);
+        Path dataDir = polyDir.resolve(PolydataYaml.DATA_DIR);
+        if (Files.isDirectory(dataDir)) {
+            registerAll(dataDir);
+        }
+    }
+
+    /**
+     * Watch service is not recursive, each directory is registered separately.
+     */
+    private void registerAll(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+                register(path);
+            }
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                Map<Path, Set<Path>> changes = new HashMap<>();
+                Set<Path> fullLoads = new HashSet<>();
+                collect(watchService.take(), changes, fullLoads);
+                WatchKey key;
+                while ((key = watchService.poll(delayMillis, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changes, fullLoads);
+                }
+                // lost events and new polys can't be applied file by file, whole poly is loaded again
+                fullLoads.stream()
+                        .filter(Files::isDirectory)
+                        .forEach(polyDir -> polydata.loadPoly(polyDir.toFile()));
+                changes.forEach((polyDir, files) -> {
+                    if (!fullLoads.contains(polyDir)) {
+                        polydata.reloadFiles(polyDir.toFile(), files);
+                    }
+                });
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to apply changes of {}", rootDir, e);
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Map<Path, Set<Path>> changes, Set<Path> fullLoads) {
+        Path dir = directories.get(key);
+        if (dir == null) {
+            key.pollEvents();
+        } else if (dir.equals(rootDir)) {
+            collectPolys(key, fullLoads);
+        } else if (dir.getParent().equals(rootDir)) {
+            collectPoly(key, dir, fullLoads);
+        } else {
+            Path polyDir = rootDir.resolve(rootDir.relativize(dir).getName(0));
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    fullLoads.add(polyDir);
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                Set<Path> files = changes.computeIfAbsent(polyDir, k -> new LinkedHashSet<>());
+                files.add(path);
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    // files can be written to new directory before it is registered
+                    try (Stream<Path> paths = Files.walk(path)) {
+                        registerAll(path);
+                        paths.filter(Files::isRegularFile).forEach(files::add);
+                    } catch (IOException e) {
+                        log.warn("Failed to watch {}", path, e);
+                        fullLoads.add(polyDir);
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Events of root directory, created poly directories are registered and loaded.
+     */
+    private void collectPolys(WatchKey key, Set<Path> fullLoads) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                registerNewPolys(fullLoads);
+                continue;
+            }
+            Path polyDir = rootDir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(polyDir)) {
+                try {
+                    registerPoly(polyDir);
+                } catch (IOException e) {
+                    log.warn("Failed to watch {}", polyDir, e);
+                }
+                fullLoads.add(polyDir);
+            }
+        }
+    }
+
+    /**
+     * Register poly directories which are not watched yet, after events of root directory were lost.
+     */
+    private void registerNewPolys(Set<Path> fullLoads) {
+        File[] polyDirs = rootDir.toFile().listFiles(File::isDirectory);
+        if (polyDirs == null) {
+            return;
+        }
+        for (File polyDir : polyDirs) {
+            if (!directories.containsValue(polyDir.toPath())) {
+                try {
+                    registerPoly(polyDir.toPath());
+                } catch (IOException e) {
+                    log.warn("Failed to watch {}", polyDir, e);
+                }
+                fullLoads.add(polyDir.toPath());
+            }
+        }
+    }
+
+    /**
+     * Events of poly directory, created data directory and changes of poly file load whole poly. Snapshot writes are ignored.
+     */
+    private void collectPoly(WatchKey key, Path polyDir, Set<Path> fullLoads) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                fullLoads.add(polyDir);
+                continue;
+            }
+            String name = event.context().toString();
+            if (PolydataYaml.POLY_FILE.equals(name)) {
+                fullLoads.add(polyDir);
+            } else if (PolydataYaml.DATA_DIR.equals(name) && event.kind() == ENTRY_CREATE) {
+                Path dataDir = polyDir.resolve(name);
+                if (Files.isDirectory(dataDir)) {
+                    try {
+                        registerAll(dataDir);
+                    } catch (IOException e) {
+                        log.warn("Failed to watch {}", dataDir, e);
+                    }
+                }
+                fullLoads.add(polyDir);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.unidev.polydata4.flatfiles;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ids of polys in one tag, ordered by timestamp descending, polys with the same timestamp are ordered by id.
+ * Backed by treap with subtree sizes, insert, remove and access by position take O(log n).
+ * List view is read only, changes go through {@link #put(String, long)} and {@link #removeId(String)}.
+ */
+public class TagIndex extends AbstractList<String> implements RandomAccess {
+
+    private final Map<String, Long> timestamps = new HashMap<>();
+    private Node root;
+
+    /**
+     * Build index from id to timestamp entries, entries are sorted once and tree is built in linear time.
+     */
+    public static TagIndex of(Map<String, Long> entries) {
+        TagIndex index = new TagIndex();
+        index.timestamps.putAll(entries);
+        List<Node> nodes = new ArrayList<>(entries.size());
+        entries.forEach((id, timestamp) -> nodes.add(new Node(timestamp, id)));
+        nodes.sort(TagIndex::compare);
+        index.root = build(nodes);
+        return index;
+    }
+
+    /**
+     * Independent copy with the same tree shape, changes of the copy are not visible in this index.
+     */
+    public TagIndex copy() {
+        TagIndex copy = new TagIndex();
+        copy.timestamps.putAll(timestamps);
+        copy.root = copy(root);
+        return copy;
+    }
+
+    /**
+     * Add id to index or move it to position of new timestamp.
+     */
+    public void put(String id, long timestamp) {
+        Long existing = timestamps.put(id, timestamp);
+        if (existing != null) {
+            if (existing == timestamp) {
+                return;
+            }
+            root = remove(root, existing, id);
+        }
+        root = insert(root, new Node(timestamp, id));
+    }
+
+    public boolean removeId(String id) {
+        Long timestamp = timestamps.remove(id);
+        if (timestamp == null) {
+            return false;
+        }
+        root = remove(root, timestamp, id);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object id) {
+        return timestamps.containsKey(id);
+    }
+
+    public Optional<Long> timestamp(String id) {
+        return Optional.ofNullable(timestamps.get(id));
+    }
+
+    /**
+     * Position of first id which follows (timestamp, id) in index order, the pair itself doesn't have to be in index.
+     */
+    public int positionAfter(long timestamp, String id) {
+        int position = 0;
+        Node node = root;
+        while (node != null) {
+            if (compare(timestamp, id, node.timestamp, node.id) < 0) {
+                node = node.left;
+            } else {
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return position;
+    }
+
+    @Override
+    public String get(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position == leftSize) {
+                return node.id;
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * In order iteration without positional lookups.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node> stack = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node node) {
+                for (; node != null; node = node.left) {
+                    stack.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = stack.pop();
+                pushLeft(node.right);
+                return node.id;
+            }
+        };
+    }
+
+    private static int compare(Node a, Node b) {
+        return compare(a.timestamp, a.id, b.timestamp, b.id);
+    }
+
+    private static int compare(long timestamp1, String id1, long timestamp2, String id2) {
+        int result = Long.compare(timestamp2, timestamp1);
+        return result != 0 ? result : id1.compareTo(id2);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node insert(Node node, Node entry) {
+        if (node == null) {
+            return entry;
+        }
+        if (compare(entry, node) < 0) {
+            node.left = insert(node.left, entry);
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, entry);
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node remove(Node node, long timestamp, String id) {
+        if (node == null) {
+            return null;
+        }
+        int result = compare(timestamp, id, node.timestamp, node.id);
+        if (result == 0) {
+            return merge(node.left, node.right);
+        }
+        if (result < 0) {
+            node.left = remove(node.left, timestamp, id);
+        } else {
+            node.right = remove(node.right, timestamp, id);
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        node.update();
+        left.right = node;
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        node.update();
+        right.left = node;
+        right.update();
+        return right;
+    }
+
+    private static Node copy(Node node) {
+        if (node == null) {
+            return null;
+        }
+        Node copy = new Node(node.timestamp, node.id, node.priority);
+        copy.size = node.size;
+        copy.left = copy(node.left);
+        copy.right = copy(node.right);
+        return copy;
+    }
+
+    /**
+     * Cartesian tree of sorted nodes, priorities are random so shape is the same as of incremental inserts.
+     */
+    private static Node build(List<Node> sorted) {
+        Deque<Node> stack = new ArrayDeque<>();
+        for (Node node : sorted) {
+            Node last = null;
+            while (!stack.isEmpty() && stack.peek().priority < node.priority) {
+                last = stack.pop();
+                last.update();
+            }
+            node.left = last;
+            if (!stack.isEmpty()) {
+                stack.peek().right = node;
+            }
+            stack.push(node);
+        }
+        Node node = null;
+        while (!stack.isEmpty()) {
+            node = stack.pop();
+            node.update();
+        }
+        return node;
+    }
+
+    private static class Node {
+        private final long timestamp;
+        private final String id;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        Node(long timestamp, String id) {
+            this(timestamp, id, ThreadLocalRandom.current().nextInt());
+        }
+
+        Node(long timestamp, String id, int priority) {
+            this.timestamp = timestamp;
+            this.id = id;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+}
@@ -1,14 +1,25 @@
 package com.unidev.polydata4.flatfiles;
 
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.shaded.com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +46,41 @@ public class FlatFileRepositoryTest {
         assertTrue(list.hasPoly("test1"));
     }
 
+    @Test
+    public void queryByCursor() {
+        FlatFileRepository repository = createRepository();
+        repository.add(BasicPoly.newPoly("test3").with(FlatFileRepository.TIMESTAMP_KEY, 2), List.of("_date"));
+
+        BasicPolyList page1 = repository.fetchIndexAfter("_date", null, 2);
+        assertEquals(2, page1.list().size());
+        String cursor = (String) page1.getMetadata().get(BasicPolyQuery.NEXT_CURSOR);
+        assertNotNull(cursor);
+
+        BasicPolyList page2 = repository.fetchIndexAfter("_date", QueryCursor.decode(cursor).get(), 2);
+        assertEquals(1, page2.list().size());
+        assertTrue(page2.hasPoly("test1"));
+        assertNull(page2.getMetadata().get(BasicPolyQuery.NEXT_CURSOR));
+    }
+
+    @Test
+    public void sourceChangesOnCopy() {
+        FlatFileRepository repository = new FlatFileRepository();
+        repository.add(BasicPoly.newPoly("test1").with(FlatFileRepository.TIMESTAMP_KEY, 1), List.of("tag1"), "1.yaml");
+        repository.add(BasicPoly.newPoly("test2").with(FlatFileRepository.TIMESTAMP_KEY, 2), List.of("tag1"), "a/2.yaml");
+
+        FlatFileRepository copy = repository.copy();
+        copy.add(BasicPoly.newPoly("test3").with(FlatFileRepository.TIMESTAMP_KEY, 3), List.of("tag2"), "1.yaml");
+        copy.removeSource("a");
+
+        assertTrue(copy.fetchById(Set.of("test1", "test2")).list().isEmpty());
+        assertTrue(copy.getPolyIndex().get("tag1").isEmpty());
+        assertEquals(List.of("test3"), copy.getPolyIndex().get("tag2"));
+        assertEquals(Map.of("1.yaml", "test3"), copy.getSourceFiles());
+
+        assertEquals(List.of("test2", "test1"), repository.getPolyIndex().get("tag1"));
+        assertEquals(2, repository.fetchById(Set.of("test1", "test2")).list().size());
+    }
+
     @Test
     public void fetchingPolysFromIndex() {
         FlatFileRepository repository = createRepository();
@@ -45,6 +91,75 @@ public class FlatFileRepositoryTest {
         assertTrue(list.hasPoly("test2"));
     }
 
+    @Test
+    void updateMovesPolyInIndex() {
+        FlatFileRepository repository = createRepository();
+        repository.add(BasicPoly.newPoly("test1").with(FlatFileRepository.TIMESTAMP_KEY, 3), List.of("_date"));
+
+        assertEquals(List.of("test1", "test2"), repository.getPolyIndex().get("_date"));
+        repository.remove("test1");
+        assertEquals(List.of("test2"), repository.getPolyIndex().get("_date"));
+    }
+
+    @Test
+    void bulkLoad() {
+        FlatFileRepository repository = new FlatFileRepository();
+        repository.startBulkLoad();
+        for (int i = 0; i < 1000; i++) {
+            repository.add(BasicPoly.newPoly("poly-" + i).with(FlatFileRepository.TIMESTAMP_KEY, i), List.of("_date", "tag-" + (i % 2)));
+        }
+        repository.finishBulkLoad();
+
+        assertEquals(1000, repository.getPolyIndex().get("_date").size());
+        assertEquals("poly-999", repository.getPolyIndex().get("_date").get(0));
+        assertEquals("poly-998", repository.getPolyIndex().get("tag-0").get(0));
+        assertEquals("poly-1", repository.getPolyIndex().get("tag-1").get(499));
+    }
+
+    @Test
+    void randomIdsAreDistinct() {
+        FlatFileRepository repository = new FlatFileRepository();
+        for (int i = 0; i < 100; i++) {
+            repository.add(BasicPoly.newPoly("poly-" + i).with(FlatFileRepository.TIMESTAMP_KEY, i), List.of("_date"));
+        }
+        assertEquals(50, Set.copyOf(repository.randomIds("_date", 50)).size());
+        assertEquals(100, Set.copyOf(repository.randomIds("_date", 200)).size());
+        assertTrue(repository.randomIds("missing", 5).isEmpty());
+    }
+
+    @Test
+    void readsDuringWrites() throws Exception {
+        FlatFileRepository repository = new FlatFileRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int reader = 0; reader < 3; reader++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    repository.fetchIndexById("_date", List.of(0, 10, 100));
+                    repository.fetchIndexAfter("_date", new QueryCursor(500L, "poly-500"), 10);
+                    repository.randomIds("tag-1", 5);
+                    assertTrue(repository.indexSize("tag-0") <= 500);
+                }
+            }));
+        }
+        for (int i = 0; i < 20000; i++) {
+            int id = i % 1000;
+            if (i % 3 == 0) {
+                repository.remove("poly-" + id);
+            } else {
+                repository.remove("poly-" + id);
+                repository.add(BasicPoly.newPoly("poly-" + id).with(FlatFileRepository.TIMESTAMP_KEY, i), List.of("_date", "tag-" + (id % 2)));
+            }
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+        assertEquals(repository.getPolyById().size(), repository.indexSize("_date"));
+    }
+
     @Test
     void serializationTest() throws IOException {
         ObjectMapper objectMapper = new ObjectMapper();
@@ -72,6 +187,34 @@ public class FlatFileRepositoryTest {
     }
 
 
+    @Test
+    void streamingSerialization() throws IOException {
+        FlatFileRepository repository = createRepository();
+        repository.setPoly("test");
+        repository.setConfig(BasicPoly.newPoly("config").with("item_per_page", 5));
+        repository.add(BasicPoly.newPoly("test3").with(FlatFileRepository.TIMESTAMP_KEY, 3), List.of("_date", "tag"), "3.yaml");
+
+        StringWriter streamed = new StringWriter();
+        try (JsonGenerator generator = PolydataSingleJson.MAPPER.getFactory().createGenerator(streamed)) {
+            FlatFileRepositoryCodec.write(generator, repository);
+        }
+        // streamed output is readable with data binding and the other way around
+        FlatFileRepository bound = PolydataSingleJson.MAPPER.readValue(streamed.toString(), FlatFileRepository.class);
+        FlatFileRepository loaded;
+        try (JsonParser parser = PolydataSingleJson.MAPPER.getFactory().createParser(PolydataSingleJson.MAPPER.writeValueAsString(repository))) {
+            loaded = FlatFileRepositoryCodec.read(parser);
+        }
+
+        for (FlatFileRepository copy : List.of(bound, loaded)) {
+            assertEquals("test", copy.getPoly());
+            assertEquals(5, copy.getConfig().fetch("item_per_page", 0));
+            assertEquals(List.of("test3", "test2", "test1"), copy.getPolyIndex().get("_date"));
+            assertEquals(List.of("test3"), copy.getPolyIndex().get("tag"));
+            assertEquals(Map.of("3.yaml", "test3"), copy.getSourceFiles());
+            assertEquals(repository.getPolyById().get("test3").data(), copy.getPolyById().get("test3").data());
+        }
+    }
+
     private FlatFileRepository createRepository() {
         FlatFileRepository repository = new FlatFileRepository();
         repository.add(BasicPoly.newPoly("test1").with(FlatFileRepository.TIMESTAMP_KEY, 1), List.of("_date"));
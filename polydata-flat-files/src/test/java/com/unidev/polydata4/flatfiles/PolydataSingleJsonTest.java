@@ -1,12 +1,19 @@
 package com.unidev.polydata4.flatfiles;
 
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.InsertRequest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class PolydataSingleJsonTest {
@@ -27,7 +34,99 @@ public class PolydataSingleJsonTest {
         PolydataSingleJson polydata2 = new PolydataSingleJson(tmpDir);
         polydata2.open();
         polydata2.prepareStorage();
-        assertTrue(polydata.exists("test"));
+        assertTrue(polydata2.exists("test"));
+    }
+
+    @Test
+    void snapshotLoading() throws IOException {
+        PolydataSingleJson polydata = new PolydataSingleJson(tmpDir);
+        polydata.setSnapshots(true);
+        polydata.prepareStorage();
+        polydata.create("test");
+        polydata.insert("test", List.of(InsertRequest.builder()
+                .data(BasicPoly.newPoly("poly-1").with("value", 1))
+                .indexToPersist(Set.of("_date", "tag"))
+                .build()));
+        polydata.close();
+        File snapshot = new File(tmpDir, "test.poly" + FlatFileSnapshot.EXTENSION);
+        assertTrue(snapshot.isFile());
+
+        PolydataSingleJson snapshotPolydata = new PolydataSingleJson(tmpDir);
+        snapshotPolydata.setSnapshots(true);
+        snapshotPolydata.prepareStorage();
+        assertEquals(1, snapshotPolydata.read("test", Set.of("poly-1")).list().size());
+        assertEquals(List.of("poly-1"), snapshotPolydata.getRepositories().get("test").getPolyIndex().get("tag"));
+
+        // changed JSON invalidates snapshot
+        File json = new File(tmpDir, "test.poly.json");
+        FlatFileRepository repository = PolydataSingleJson.MAPPER.readValue(json, FlatFileRepository.class);
+        repository.remove("poly-1");
+        PolydataSingleJson.MAPPER.writeValue(json, repository);
+        assertTrue(FlatFileSnapshot.read(snapshot, List.of(json)).isEmpty());
+
+        PolydataSingleJson reloaded = new PolydataSingleJson(tmpDir);
+        reloaded.setSnapshots(true);
+        reloaded.prepareStorage();
+        assertTrue(reloaded.read("test", Set.of("poly-1")).list().isEmpty());
+        assertTrue(FlatFileSnapshot.read(snapshot, List.of(json)).isPresent());
+    }
+
+    @Test
+    void journalRecovery() throws IOException {
+        PolydataSingleJson polydata = new PolydataSingleJson(tmpDir);
+        polydata.setCompactionIntervalSeconds(0);
+        polydata.prepareStorage();
+        polydata.create("test");
+        polydata.insert("test", List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("poly-1").with("value", 1)).indexToPersist(Set.of("tag")).build(),
+                InsertRequest.builder().data(BasicPoly.newPoly("poly-2").with("value", 2)).indexToPersist(Set.of("tag")).build()));
+        polydata.remove("test", Set.of("poly-1"));
+
+        // process is not closed, last write is cut in the middle
+        File json = new File(tmpDir, "test.poly.json");
+        File journal = new File(tmpDir, "test.poly" + FlatFileJournal.EXTENSION);
+        assertFalse(json.exists());
+        Files.writeString(journal.toPath(), "{\"operation\":\"PUT\",\"id\":\"poly-3", StandardOpenOption.APPEND);
+
+        PolydataSingleJson recovered = new PolydataSingleJson(tmpDir);
+        recovered.setCompactionIntervalSeconds(0);
+        recovered.prepareStorage();
+        assertTrue(recovered.exists("test"));
+        assertEquals(PolydataSingleJson.DEFAULT_ITEM_PER_PAGE, recovered.config("test").get().fetch(PolydataSingleJson.ITEM_PER_PAGE, 0));
+        assertEquals(List.of("poly-2"), recovered.getRepositories().get("test").getPolyIndex().get("tag"));
+        assertEquals(2, recovered.read("test", Set.of("poly-2")).list().get(0).fetch("value", 0));
+
+        recovered.compact("test");
+        assertTrue(json.isFile());
+        assertEquals(0, journal.length());
+        assertFalse(FlatFileJournal.rotatedFile(journal).exists());
+        recovered.close();
+        assertFalse(journal.exists());
+
+        PolydataSingleJson compacted = new PolydataSingleJson(tmpDir);
+        compacted.prepareStorage();
+        assertEquals(List.of("poly-2"), compacted.getRepositories().get("test").getPolyIndex().get("tag"));
+        compacted.close();
+    }
+
+    @Test
+    void journalReplaySkipsCorruptMiddleEntry() throws IOException {
+        File journal = new File(tmpDir, "test.poly" + FlatFileJournal.EXTENSION);
+        try (FlatFileJournal writer = new FlatFileJournal(journal, false)) {
+            writer.append(List.of(FlatFileJournal.Entry.put(BasicPoly.newPoly("poly-1"), Set.of("tag"))));
+        }
+        Files.writeString(journal.toPath(), "{\"operation\":\"PUT\",\"id\n", StandardOpenOption.APPEND);
+        try (FlatFileJournal writer = new FlatFileJournal(journal, false)) {
+            writer.append(List.of(FlatFileJournal.Entry.put(BasicPoly.newPoly("poly-2"), Set.of("tag"))));
+        }
+        long length = journal.length();
+        Files.writeString(journal.toPath(), "{\"operation\":\"REM", StandardOpenOption.APPEND);
+
+        List<String> ids = new ArrayList<>();
+        assertEquals(2, FlatFileJournal.replay(journal, entry -> ids.add(entry.getId())));
+        assertEquals(List.of("poly-1", "poly-2"), ids);
+        // only the trailing partial write is dropped
+        assertEquals(length, journal.length());
     }
 
 }
@@ -4,10 +4,19 @@ import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.domain.BasicPolyList;
 import com.unidev.polydata4.domain.BasicPolyQuery;
 import org.junit.jupiter.api.BeforeEach;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +42,148 @@ public class PolydataYamlTest {
         assertEquals(2, polydataYaml.list().list().size());
     }
 
+    @Test
+    void parallelLoading() {
+        PolydataYaml parallelYaml = new PolydataYaml(new File("polydata-yaml"));
+        parallelYaml.setLoadThreads(4);
+        parallelYaml.prepareStorage();
+
+        assertEquals(2, parallelYaml.getRepositories().size());
+        polydataYaml.getRepositories().forEach((poly, repository) -> {
+            FlatFileRepository parallelRepository = parallelYaml.getRepositories().get(poly);
+            assertEquals(repository.getPolyById().keySet(), parallelRepository.getPolyById().keySet());
+            assertEquals(repository.getPolyIndex(), parallelRepository.getPolyIndex());
+        });
+
+        PolyLoadReport report = parallelYaml.getLoadReports().get("test1");
+        assertEquals(4, report.getFiles());
+        assertEquals(0, report.getFailedFiles());
+    }
+
+    @Test
+    void snapshotLoading(@TempDir File tmpDir) throws IOException {
+        FileUtils.copyDirectory(new File("polydata-yaml"), tmpDir);
+        PolydataYaml parsed = new PolydataYaml(tmpDir);
+        parsed.setSnapshots(true);
+        parsed.prepareStorage();
+        assertFalse(parsed.getLoadReports().get("test1").isSnapshot());
+        assertTrue(new File(tmpDir, "test1/" + PolydataYaml.SNAPSHOT_FILE).isFile());
+
+        PolydataYaml fromSnapshot = new PolydataYaml(tmpDir);
+        fromSnapshot.setSnapshots(true);
+        fromSnapshot.prepareStorage();
+        assertTrue(fromSnapshot.getLoadReports().get("test1").isSnapshot());
+        assertEquals(parsed.getRepositories().get("test1").getPolyIndex(), fromSnapshot.getRepositories().get("test1").getPolyIndex());
+        assertEquals(new HashMap<>(parsed.config("test1").get().data()), new HashMap<>(fromSnapshot.config("test1").get().data()));
+        BasicPolyList polys = fromSnapshot.read("test1", Set.of("test-id-2"));
+        assertEquals("ccc", polys.list().get(0).metadata().get("bbb"));
+
+        // new data file invalidates snapshot
+        FileUtils.copyFile(new File(tmpDir, "test1/data/1.yaml"), new File(tmpDir, "test1/data/copy.yaml"));
+        PolydataYaml reloaded = new PolydataYaml(tmpDir);
+        reloaded.setSnapshots(true);
+        reloaded.prepareStorage();
+        assertFalse(reloaded.getLoadReports().get("test1").isSnapshot());
+    }
+
+    @Test
+    void snapshotWithoutSourceFilesIsRebuilt(@TempDir File tmpDir) throws IOException {
+        FileUtils.copyDirectory(new File("polydata-yaml"), tmpDir);
+        File polyDir = new File(tmpDir, "test1");
+        List<File> sources = new ArrayList<>(FileUtils.listFiles(new File(polyDir, PolydataYaml.DATA_DIR), new String[]{"yaml"}, true));
+        sources.add(new File(polyDir, PolydataYaml.POLY_FILE));
+        FlatFileRepository legacy = new FlatFileRepository();
+        legacy.add(BasicPoly.newPoly("test-id-1"), List.of("_date"));
+        FlatFileSnapshot.write(new File(polyDir, PolydataYaml.SNAPSHOT_FILE), sources, legacy);
+
+        PolydataYaml loaded = new PolydataYaml(tmpDir);
+        loaded.setSnapshots(true);
+        loaded.prepareStorage();
+        assertFalse(loaded.getLoadReports().get("test1").isSnapshot());
+        assertEquals(4, loaded.getRepositories().get("test1").getSourceFiles().size());
+
+        PolydataYaml rebuilt = new PolydataYaml(tmpDir);
+        rebuilt.setSnapshots(true);
+        rebuilt.prepareStorage();
+        assertTrue(rebuilt.getLoadReports().get("test1").isSnapshot());
+    }
+
+    @Test
+    void watchNewPolys(@TempDir File tmpDir) throws Exception {
+        FileUtils.copyDirectory(new File("polydata-yaml"), tmpDir);
+        PolydataYaml watched = new PolydataYaml(tmpDir);
+        watched.setWatch(true);
+        watched.setWatchDelayMillis(50);
+        watched.prepareStorage();
+        try {
+            String poly = "_metadata:\n  _index:\n    - \"tag1\"\n_id: \"%s\"\n";
+            // poly directory and its data directory are created after start
+            File polyDir = new File(tmpDir, "test3");
+            assertTrue(polyDir.mkdir());
+            waitFor(() -> watched.getRepositories().containsKey("test3"));
+            File dataDir = new File(polyDir, PolydataYaml.DATA_DIR);
+            assertTrue(dataDir.mkdir());
+            FileUtils.writeStringToFile(new File(dataDir, "1.yaml"), String.format(poly, "new-1"), StandardCharsets.UTF_8);
+            waitFor(() -> watched.read("test3", Set.of("new-1")).list().size() == 1);
+            FileUtils.writeStringToFile(new File(dataDir, "2.yaml"), String.format(poly, "new-2"), StandardCharsets.UTF_8);
+            waitFor(() -> watched.read("test3", Set.of("new-2")).list().size() == 1);
+
+            // data directory of existing poly created after start
+            File emptyPoly = new File(tmpDir, "test4");
+            FileUtils.writeStringToFile(new File(emptyPoly, "1.txt"), "", StandardCharsets.UTF_8);
+            waitFor(() -> watched.getRepositories().containsKey("test4"));
+            FileUtils.writeStringToFile(new File(emptyPoly, "data/a/1.yaml"), String.format(poly, "nested-1"), StandardCharsets.UTF_8);
+            waitFor(() -> watched.read("test4", Set.of("nested-1")).list().size() == 1);
+            assertEquals(1, watched.getRepositories().get("test4").indexSize("tag1"));
+        } finally {
+            watched.close();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Changes were not applied");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void watchChanges(@TempDir File tmpDir) throws Exception {
+        FileUtils.copyDirectory(new File("polydata-yaml"), tmpDir);
+        PolydataYaml watched = new PolydataYaml(tmpDir);
+        watched.setWatch(true);
+        watched.setWatchDelayMillis(50);
+        watched.prepareStorage();
+        try {
+            FlatFileRepository initial = watched.getRepositories().get("test1");
+
+            File changed = new File(tmpDir, "test1/data/1.yaml");
+            FileUtils.writeStringToFile(changed, FileUtils.readFileToString(changed, StandardCharsets.UTF_8)
+                    .replace("\"tag1\"", "\"tag2\""), StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(tmpDir, "test1/data/b/new.yaml"),
+                    "_metadata:\n  _index:\n    - \"tag1\"\n_id: \"test-id-5\"\n_timestamp: 1000\n", StandardCharsets.UTF_8);
+            FileUtils.forceDelete(new File(tmpDir, "test1/data/a/c.yaml"));
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (watched.getRepositories().get("test1") == initial
+                    || watched.read("test1", Set.of("test-id-4", "test-id-5")).list().size() != 1
+                    || !watched.getRepositories().get("test1").getPolyIndex().get("tag2").contains("test-id-1")) {
+                assertTrue(System.currentTimeMillis() < deadline, "Changes were not applied");
+                Thread.sleep(50);
+            }
+            FlatFileRepository reloaded = watched.getRepositories().get("test1");
+            assertEquals(List.of("test-id-5", "test-id-3", "test-id-2"), reloaded.getPolyIndex().get("tag1"));
+            assertFalse(reloaded.getPolyIndex().get("_date").contains("test-id-4"));
+
+            // published repository is a copy, previous one is not changed
+            assertEquals(4, initial.getPolyIndex().get("tag1").size());
+            assertTrue(initial.getPolyIndex().get("tag1").contains("test-id-4"));
+        } finally {
+            watched.close();
+        }
+    }
+
     @Test
     void index() {
         assertTrue(polydataYaml.index("qwe").isEmpty());
@@ -0,0 +1,68 @@
+package com.unidev.polydata4.flatfiles;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagIndexTest {
+
+    @Test
+    void orderByTimestampDescending() {
+        TagIndex index = new TagIndex();
+        index.put("a", 1);
+        index.put("b", 3);
+        index.put("c", 2);
+        index.put("d", 2);
+
+        assertEquals(List.of("b", "c", "d", "a"), index);
+        assertEquals("c", index.get(1));
+        assertTrue(index.contains("d"));
+
+        index.put("a", 5);
+        assertEquals(List.of("a", "b", "c", "d"), index);
+
+        assertTrue(index.removeId("c"));
+        assertFalse(index.removeId("c"));
+        assertEquals(List.of("a", "b", "d"), index);
+    }
+
+    @Test
+    void positionAfterCursor() {
+        TagIndex index = TagIndex.of(Map.of("a", 3L, "b", 2L, "c", 2L, "d", 1L));
+
+        assertEquals(1, index.positionAfter(3, "a"));
+        assertEquals(3, index.positionAfter(2, "c"));
+        // removed "bb" would be between "b" and "c"
+        assertEquals(2, index.positionAfter(2, "bb"));
+        assertEquals(4, index.positionAfter(0, "z"));
+    }
+
+    @Test
+    void matchesSortedList() {
+        Random random = new Random(1);
+        TagIndex index = new TagIndex();
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            String id = "poly-" + random.nextInt(1_000);
+            if (random.nextInt(4) == 0) {
+                index.removeId(id);
+                expected.remove(id);
+            } else {
+                long timestamp = random.nextInt(500);
+                index.put(id, timestamp);
+                expected.put(id, timestamp);
+            }
+        }
+        List<String> sorted = new ArrayList<>(expected.keySet());
+        sorted.sort(Comparator.comparing((String id) -> -expected.get(id)).thenComparing(id -> id));
+
+        assertEquals(sorted, index);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i), index.get(i));
+        }
+        assertEquals(index, TagIndex.of(expected));
+    }
+
+}
@@ -18,6 +18,11 @@ public class BasicPolyQuery implements PolyQuery, Serializable {
     public static final String QUERY_IDS = "ids";
     public static final String INDEX = "index";
     public static final String PAGE = "page";
+    public static final String CURSOR = "cursor";
+    /**
+     * Key in result list metadata with cursor of next page, missing when there are no more polys.
+     */
+    public static final String NEXT_CURSOR = "next_cursor";
     @Builder.Default
     private BasicPoly options = new BasicPoly();
 
@@ -53,6 +58,17 @@ public class BasicPolyQuery implements PolyQuery, Serializable {
         options.put(PAGE, page + "");
     }
 
+    /**
+     * Cursor returned in {@link #NEXT_CURSOR} of previous page, used by {@link QueryFunction#CURSOR} queries.
+     */
+    public String cursor() {
+        return options.fetch(CURSOR);
+    }
+
+    public void cursor(String cursor) {
+        options.put(CURSOR, cursor);
+    }
+
     public <T> T option(String key) {
         return options.fetch(key);
     }
@@ -65,7 +81,7 @@ public class BasicPolyQuery implements PolyQuery, Serializable {
         options.put(key, value);
     }
 
-    public enum QueryFunction {PAGES, RANDOM, SEARCH, CUSTOM}
+    public enum QueryFunction {PAGES, RANDOM, SEARCH, CUSTOM, CURSOR}
 
 
 }
@@ -0,0 +1,241 @@
+package com.unidev.polydata4.mongodb;
+
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import com.unidev.polydata4.api.ExecutorAsyncPolydata;
+import com.unidev.polydata4.api.NearCache;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import com.unidev.polydata4.domain.PolyQuery;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.unidev.polydata4.api.Polydata._ID;
+
+/**
+ * Async Mongodb storage which reads datasets with Reactive Streams driver, without holding threads.
+ * Writes run blocking {@link PolydataMongodb} on executor, so JCache and index counters are updated in one place.
+ * Reads don't use JCache of blocking storage, both flavors share its near cache.
+ * Consumer of {@link #forEach(String, int, Consumer)} is called on driver threads, next batch is requested after it
+ * accepts current one.
+ */
+public class MongodbAsyncPolydata extends ExecutorAsyncPolydata {
+
+    private final PolydataMongodb polydata;
+    private final MongoClient mongoClient;
+    private final MongoDatabase database;
+
+    /**
+     * Async client is connected to URI of blocking storage.
+     */
+    public MongodbAsyncPolydata(PolydataMongodb polydata, Executor executor, boolean ownExecutor) {
+        super(polydata, executor, ownExecutor);
+        this.polydata = polydata;
+        this.mongoClient = MongoClients.create(polydata.getMongoUri());
+        this.database = mongoClient.getDatabase(Objects.requireNonNull(polydata.getMongoClientURI().getDatabase()));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String dataset) {
+        return config(dataset).thenApply(Optional::isPresent);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> config(String dataset) {
+        return polydata.nearCache().getAsync(NearCache.Kind.CONFIG, dataset,
+                () -> fetchPolyFromCollection(dataset, PolydataMongodb.CONFIGURATION_COLLECTION), Optional::isPresent, NearCache::copy);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> metadata(String dataset) {
+        return polydata.nearCache().getAsync(NearCache.Kind.METADATA, dataset,
+                () -> fetchPolyFromCollection(dataset, PolydataMongodb.METADATA_COLLECTION), Optional::isPresent, NearCache::copy);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> index(String dataset) {
+        return exists(dataset).thenCompose(exists -> {
+            if (!exists) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            return fetchPolyFromCollection(dataset, PolydataMongodb.INDEX_COLLECTION)
+                    .thenApply(rawIndex -> rawIndex.map(value -> PolydataMongodb.indexPoly(dataset, value)));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> indexData(String dataset, String indexId) {
+        return index(dataset).thenApply(index -> index.map(value -> value.<BasicPoly>fetch(indexId)));
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> read(String dataset, Set<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(new BasicPolyList());
+        }
+        return collect(collection(dataset).find(Filters.in(_ID, ids))).thenApply(documents -> {
+            BasicPolyList list = new BasicPolyList();
+            documents.forEach(document -> list.add(PolydataMongodb.toPoly(document)));
+            return list;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> query(String dataset, PolyQuery polyQuery) {
+        BasicPolyQuery query = (BasicPolyQuery) polyQuery;
+        return config(dataset).thenCompose(config -> {
+            if (config.isEmpty()) {
+                throw new RuntimeException("Poly " + dataset + " is not configured");
+            }
+            MongodbQuery mongodbQuery = MongodbQuery.of(config.get(), query);
+            MongoCollection<Document> collection = collection(dataset);
+            Publisher<Document> documents;
+            if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
+                documents = collection.aggregate(List.of(Aggregates.sample(mongodbQuery.limit))).allowDiskUse(true);
+            } else {
+                documents = collection.find(mongodbQuery.filter).sort(mongodbQuery.sort)
+                        .skip(mongodbQuery.skip).limit(mongodbQuery.limit);
+            }
+            return collect(documents).thenApply(found -> {
+                BasicPolyList list = new BasicPolyList();
+                found.forEach(document -> list.add(PolydataMongodb.toPoly(document)));
+                mongodbQuery.nextCursor(list, found.isEmpty() ? null : found.get(found.size() - 1));
+                return list;
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> count(String dataset, PolyQuery polyQuery) {
+        BasicPolyQuery query = (BasicPolyQuery) polyQuery;
+        return config(dataset).thenCompose(config -> {
+            if (config.isEmpty()) {
+                throw new RuntimeException("Poly " + dataset + " is not configured");
+            }
+            return collect(collection(dataset).countDocuments(MongodbQuery.indexFilter(query))).thenApply(counts -> counts.get(0));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> forEach(String dataset, int fetchSize, Consumer<BasicPoly> consumer) {
+        return forEach(collection(dataset).find().batchSize(fetchSize), fetchSize,
+                document -> consumer.accept(PolydataMongodb.toPoly(document)));
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> list() {
+        return collect(collection(PolydataMongodb.CONFIGURATION_COLLECTION).find()).thenApply(documents -> {
+            BasicPolyList list = new BasicPolyList();
+            documents.forEach(document -> list.add(BasicPoly.newPoly(document.getString(_ID))));
+            return list;
+        });
+    }
+
+    /**
+     * Close blocking storage and executor, then async client.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            mongoClient.close();
+        }
+    }
+
+    private MongoCollection<Document> collection(String collection) {
+        return database.getCollection(collection);
+    }
+
+    private CompletableFuture<Optional<BasicPoly>> fetchPolyFromCollection(String dataset, String collection) {
+        return collect(collection(collection).find(Filters.eq(dataset)).first())
+                .thenApply(documents -> documents.stream().findFirst().map(PolydataMongodb::toPoly));
+    }
+
+    private static <T> CompletableFuture<List<T>> collect(Publisher<T> publisher) {
+        List<T> items = new ArrayList<>();
+        return forEach(publisher, Long.MAX_VALUE, items::add).thenApply(count -> items);
+    }
+
+    /**
+     * Pass published items to consumer, future completes with number of items. Driver errors and errors of consumer
+     * complete it exceptionally.
+     */
+    private static <T> CompletableFuture<Long> forEach(Publisher<T> publisher, long batchSize, Consumer<T> consumer) {
+        ForEachSubscriber<T> subscriber = new ForEachSubscriber<>(consumer, batchSize);
+        publisher.subscribe(subscriber);
+        return subscriber.future;
+    }
+
+    /**
+     * Subscriber which requests items in batches, signals of publisher are serialized so state is not guarded.
+     */
+    private static class ForEachSubscriber<T> implements Subscriber<T> {
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private final Consumer<T> consumer;
+        private final long batchSize;
+        private Subscription subscription;
+        private long count;
+        private long pending;
+
+        ForEachSubscriber(Consumer<T> consumer, long batchSize) {
+            this.consumer = consumer;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            pending = batchSize;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                consumer.accept(item);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                future.completeExceptionally(e);
+                return;
+            }
+            count++;
+            if (--pending == 0) {
+                pending = batchSize;
+                subscription.request(batchSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            future.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            future.complete(count);
+        }
+    }
+
+}
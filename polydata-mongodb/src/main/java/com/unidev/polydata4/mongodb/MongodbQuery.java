@@ -0,0 +1,99 @@
+package com.unidev.polydata4.mongodb;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.TextSearchOptions;
+import com.unidev.polydata4.api.QueryCursor;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Optional;
+
+import static com.unidev.polydata4.api.Polydata.*;
+
+/**
+ * Find parameters of poly query, shared by blocking and async storage.
+ * Random query is run as sample aggregation of limit documents, other queries as find.
+ */
+class MongodbQuery {
+
+    final BasicPolyQuery.QueryFunction function;
+    final Bson filter;
+    final Bson sort;
+    final int skip;
+    final int limit;
+
+    private MongodbQuery(BasicPolyQuery.QueryFunction function, Bson filter, Bson sort, int skip, int limit) {
+        this.function = function;
+        this.filter = filter;
+        this.sort = sort;
+        this.skip = skip;
+        this.limit = limit;
+    }
+
+    static MongodbQuery of(BasicPoly config, BasicPolyQuery query) {
+        final int page = query.page() < 0 ? 0 : query.page();
+        Integer defaultItemPerPage = config.fetch(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
+        Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
+        Bson byUpdateDate = Sorts.descending(PolydataMongodb.UPDATE_DATE);
+
+        switch (query.queryType()) {
+            case RANDOM:
+                return new MongodbQuery(query.queryType(), null, null, 0, query.option(RANDOM_COUNT, itemPerPage));
+            case SEARCH:
+                String searchText = query.getOptions().fetch(SEARCH_TEXT);
+                TextSearchOptions options = new TextSearchOptions().caseSensitive(false).diacriticSensitive(false);
+                return new MongodbQuery(query.queryType(), Filters.text(searchText, options), byUpdateDate, page * itemPerPage, itemPerPage);
+            case PAGES:
+                return new MongodbQuery(query.queryType(), indexFilter(query), byUpdateDate, page * itemPerPage, itemPerPage);
+            case CURSOR:
+                Bson filter = indexFilter(query);
+                Optional<QueryCursor> cursor = QueryCursor.decode(query.cursor());
+                if (cursor.isPresent()) {
+                    // seek after last returned document in (_update_date DESC, _id ASC) order
+                    long updateDate = cursor.get().getValue();
+                    filter = Filters.and(filter, Filters.or(
+                            Filters.lt(PolydataMongodb.UPDATE_DATE, updateDate),
+                            Filters.and(Filters.eq(PolydataMongodb.UPDATE_DATE, updateDate), Filters.gt(_ID, cursor.get().getId()))
+                    ));
+                }
+                return new MongodbQuery(query.queryType(), filter,
+                        Sorts.orderBy(Sorts.descending(PolydataMongodb.UPDATE_DATE), Sorts.ascending(_ID)), 0, itemPerPage);
+            case CUSTOM:
+                String customQuery = query.getOptions().fetch(CUSTOM_QUERY);
+                return new MongodbQuery(query.queryType(), Document.parse(customQuery), byUpdateDate, page * itemPerPage, itemPerPage);
+            default:
+                throw new IllegalArgumentException("Unsupported query " + query.queryType());
+        }
+    }
+
+    /**
+     * Documents tagged with index of query, date index when query has no index.
+     */
+    static Bson indexFilter(BasicPolyQuery query) {
+        String index = DATE_INDEX;
+        String tag = query.index();
+        if (!StringUtils.isBlank(tag)) {
+            index = tag;
+        }
+        return Filters.in(INDEXES, index);
+    }
+
+    /**
+     * Cursor of next page of cursor query, set when page is full.
+     */
+    void nextCursor(BasicPolyList list, Document last) {
+        if (function != BasicPolyQuery.QueryFunction.CURSOR) {
+            return;
+        }
+        if (last != null && list.list().size() == limit) {
+            long updateDate = ((Number) last.get(PolydataMongodb.UPDATE_DATE)).longValue();
+            list.getMetadata().put(BasicPolyQuery.NEXT_CURSOR, new QueryCursor(updateDate, last.getString(_ID)).encode());
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.*;
 import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.NearCache;
 import com.unidev.polydata4.domain.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -21,6 +22,8 @@ import org.bson.conversions.Bson;
 import javax.cache.Cache;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Storage of polydata records in mongodb.
@@ -31,7 +34,7 @@ public class PolydataMongodb extends AbstractPolydata {
     public static final String METADATA_COLLECTION = "_metadata";
     public static final String CREATE_DATE = "_create_date";
     public static final String INDEX_COLLECTION = "_indexes";
-    private static final String UPDATE_DATE = "_update_date";
+    static final String UPDATE_DATE = "_update_date";
 
 
     @Getter
@@ -57,6 +60,7 @@ public class PolydataMongodb extends AbstractPolydata {
         collection(dataset).createIndex(Indexes.ascending(CREATE_DATE));
         collection(dataset).createIndex(Indexes.descending(UPDATE_DATE));
         collection(dataset).createIndex(Indexes.compoundIndex(Indexes.ascending(INDEXES), Indexes.descending(UPDATE_DATE)));
+        collection(dataset).createIndex(Indexes.compoundIndex(Indexes.ascending(INDEXES), Indexes.descending(UPDATE_DATE), Indexes.ascending(_ID)));
     }
 
     /**
@@ -92,6 +96,7 @@ public class PolydataMongodb extends AbstractPolydata {
         if (exists(dataset)) {
             return config(dataset).get();
         }
+        nearCache.invalidate(dataset);
         config(dataset, BasicPoly.newPoly(dataset));
         metadata(dataset, BasicPoly.newPoly(dataset).with(CREATE_DATE, new Date()));
 
@@ -107,22 +112,24 @@ public class PolydataMongodb extends AbstractPolydata {
 
     @Override
     public Optional<BasicPoly> config(String dataset) {
-        return fetchPolyFromCollection(dataset, CONFIGURATION_COLLECTION);
+        return cachedConfig(dataset, () -> fetchPolyFromCollection(dataset, CONFIGURATION_COLLECTION));
     }
 
     @Override
     public void config(String dataset, BasicPoly config) {
         persistPolyToCollection(dataset, CONFIGURATION_COLLECTION, config);
+        nearCache.invalidate(NearCache.Kind.CONFIG, dataset);
     }
 
     @Override
     public Optional<BasicPoly> metadata(String dataset) {
-        return fetchPolyFromCollection(dataset, METADATA_COLLECTION);
+        return cachedMetadata(dataset, () -> fetchPolyFromCollection(dataset, METADATA_COLLECTION));
     }
 
     @Override
     public void metadata(String dataset, BasicPoly metadata) {
         persistPolyToCollection(dataset, METADATA_COLLECTION, metadata);
+        nearCache.invalidate(NearCache.Kind.METADATA, dataset);
     }
 
     @Override
@@ -144,20 +151,27 @@ public class PolydataMongodb extends AbstractPolydata {
             }
         }
         if (rawIndex != null) {
-            // transform index to poly
-            index = BasicPoly.newPoly(dataset);
-            for (String key : rawIndex.data().keySet()) {
-                if (StringUtils.equals(key, _ID)) {
-                    continue;
-                }
-                index.put(key, BasicPoly.newPoly(key).with("count", Long.parseLong(rawIndex.data().get(key) + "")));
-            }
+            index = indexPoly(dataset, rawIndex);
             putIfCache(dataset + "-index", index);
         }
 
         return Optional.ofNullable(index);
     }
 
+    /**
+     * Transform stored index counts to index poly.
+     */
+    static BasicPoly indexPoly(String dataset, BasicPoly rawIndex) {
+        BasicPoly index = BasicPoly.newPoly(dataset);
+        for (String key : rawIndex.data().keySet()) {
+            if (StringUtils.equals(key, _ID)) {
+                continue;
+            }
+            index.put(key, BasicPoly.newPoly(key).with("count", Long.parseLong(rawIndex.data().get(key) + "")));
+        }
+        return index;
+    }
+
     @Override
     public Optional<BasicPoly> indexData(String dataset, String indexId) {
         Optional<BasicPoly> index = index(dataset);
@@ -310,44 +324,20 @@ public class PolydataMongodb extends AbstractPolydata {
         }
 
         BasicPolyList list = new BasicPolyList();
-
-        String index = DATE_INDEX;
-        String tag = query.index();
-        if (!StringUtils.isBlank(tag)) {
-            index = tag;
-        }
-        BasicPoly config = configPoly.get();
-
-        final int page = query.page() < 0 ? 0 : query.page();
-
-        Integer defaultItemPerPage = config.fetch(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
-        Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
+        MongodbQuery mongodbQuery = MongodbQuery.of(configPoly.get(), query);
         MongoCollection<Document> collection = collection(dataset);
 
         if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
-            int randomCount = query.option(RANDOM_COUNT, itemPerPage);
-            AggregateIterable<Document> documents = collection.aggregate(List.of(Aggregates.sample(randomCount))).allowDiskUse(true);
+            AggregateIterable<Document> documents = collection.aggregate(List.of(Aggregates.sample(mongodbQuery.limit))).allowDiskUse(true);
             try (MongoCursor<Document> iterator = documents.iterator()) {
                 iterator.forEachRemaining(document -> list.add(toPoly(document)));
             }
             return list;
         }
-        if (query.queryType() == BasicPolyQuery.QueryFunction.SEARCH) {
-            String searchText = query.getOptions().fetch(SEARCH_TEXT);
-            TextSearchOptions options = new TextSearchOptions().caseSensitive(false).diacriticSensitive(false);
-            Bson filter = Filters.text(searchText, options);
-            try (MongoCursor<Document> iterator = collection.find(filter).sort(
-                            Sorts.descending(UPDATE_DATE))
-                    .skip(page * itemPerPage).limit(itemPerPage).cursor()) {
-                while (iterator.hasNext()) {
-                    Document next = iterator.next();
-                    list.add(toPoly(next));
-                }
-            }
-        }
 
-        if (query.queryType() == BasicPolyQuery.QueryFunction.PAGES) {
-            Bson mongoQuery = Filters.in(INDEXES, index);
+        boolean pages = query.queryType() == BasicPolyQuery.QueryFunction.PAGES;
+        final int page = query.page() < 0 ? 0 : query.page();
+        if (pages) {
             BasicPolyList cachedResult = ifCache(cache -> {
                 String key = dataset + "-query-" + page + "-" + query.index() + "-" + query.queryType();
                 BasicPoly cachedQuery = cache.get(key);
@@ -360,36 +350,24 @@ public class PolydataMongodb extends AbstractPolydata {
             if (cachedResult != null) {
                 return cachedResult;
             }
+        }
 
-            try (MongoCursor<Document> iterator = collection.find(mongoQuery).sort(
-                            Sorts.descending(UPDATE_DATE))
-                    .skip(page * itemPerPage).limit(itemPerPage).cursor()) {
-                while (iterator.hasNext()) {
-                    Document next = iterator.next();
-                    list.add(toPoly(next));
-                }
-            }
-
-            if (cache.isPresent()) {
-                Cache<String, BasicPoly> cachedInstance = cache.get();
-                String key = dataset + "-query-" + query.page() + "-" + query.index() + "-" + query.queryType();
-                BasicPoly cachedQuery = new BasicPoly();
-                cachedQuery.put("list", list);
-                cachedInstance.put(key, cachedQuery);
+        Document last = null;
+        try (MongoCursor<Document> iterator = collection.find(mongodbQuery.filter).sort(mongodbQuery.sort)
+                .skip(mongodbQuery.skip).limit(mongodbQuery.limit).cursor()) {
+            while (iterator.hasNext()) {
+                last = iterator.next();
+                list.add(toPoly(last));
             }
         }
+        mongodbQuery.nextCursor(list, last);
 
-        if (query.queryType() == BasicPolyQuery.QueryFunction.CUSTOM) {
-            String customQuery = query.getOptions().fetch(CUSTOM_QUERY);
-            Document filter = Document.parse(customQuery);
-            try (MongoCursor<Document> iterator = collection.find(filter).sort(
-                            Sorts.descending(UPDATE_DATE))
-                    .skip(page * itemPerPage).limit(itemPerPage).cursor()) {
-                while (iterator.hasNext()) {
-                    Document next = iterator.next();
-                    list.add(toPoly(next));
-                }
-            }
+        if (pages && cache.isPresent()) {
+            Cache<String, BasicPoly> cachedInstance = cache.get();
+            String key = dataset + "-query-" + query.page() + "-" + query.index() + "-" + query.queryType();
+            BasicPoly cachedQuery = new BasicPoly();
+            cachedQuery.put("list", list);
+            cachedInstance.put(key, cachedQuery);
         }
 
         return list;
@@ -403,11 +381,6 @@ public class PolydataMongodb extends AbstractPolydata {
         if (configPoly.isEmpty()) {
             throw new RuntimeException("Poly " + dataset + " is not configured");
         }
-        String index = DATE_INDEX;
-        String tag = query.index();
-        if (!StringUtils.isBlank(tag)) {
-            index = tag;
-        }
 
         Long cachedResult = ifCache(cache -> {
             String key = dataset + "-count-" + query.index() + "-" + query.queryType();
@@ -421,9 +394,8 @@ public class PolydataMongodb extends AbstractPolydata {
             return cachedResult;
         }
 
-        Bson mongoQuery = Filters.in(INDEXES, index);
         MongoCollection<Document> collection = collection(dataset);
-        Long count = collection.countDocuments(mongoQuery);
+        Long count = collection.countDocuments(MongodbQuery.indexFilter(query));
 
         if (cache.isPresent()) {
             Cache<String, BasicPoly> cachedInstance = cache.get();
@@ -436,6 +408,14 @@ public class PolydataMongodb extends AbstractPolydata {
         return count;
     }
 
+    @Override
+    public Stream<BasicPoly> stream(String dataset, int fetchSize) {
+        MongoCursor<Document> cursor = collection(dataset).find().batchSize(fetchSize).iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(PolydataMongodb::toPoly)
+                .onClose(cursor::close);
+    }
+
     @Override
     public BasicPolyList list() {
         BasicPolyList list = new BasicPolyList();
@@ -465,7 +445,7 @@ public class PolydataMongodb extends AbstractPolydata {
         return mongoClient.getDatabase(Objects.requireNonNull(mongoClientURI.getDatabase())).getCollection(collection);
     }
 
-    private BasicPoly toPoly(Document document) {
+    static BasicPoly toPoly(Document document) {
         BasicPoly poly = new BasicPoly();
         for (String key : document.keySet()) {
             poly.put(key, document.get(key));
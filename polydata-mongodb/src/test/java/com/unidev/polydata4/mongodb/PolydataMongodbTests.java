@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -235,6 +236,42 @@ public class PolydataMongodbTests {
 
     }
 
+    @Test
+    void asyncReads() throws IOException {
+        for (int i = 0; i < 15; i++) {
+            polydata.insert(polyId, Collections.singletonList(
+                    InsertRequest.builder()
+                            .data(BasicPoly.newPoly("test_" + i).with("field", i))
+                            .indexToPersist(Set.of("tag_x", "_date"))
+                            .build())
+            );
+        }
+
+        try (MongodbAsyncPolydata async = new MongodbAsyncPolydata(polydata, Executors.newSingleThreadExecutor(), true)) {
+            assertTrue(async.exists(polyId).join());
+            assertFalse(async.exists("missing-" + polyId).join());
+            assertEquals(polyId, async.config(polyId).join().get()._id());
+            assertTrue(async.metadata(polyId).join().isPresent());
+            assertEquals(15L, async.indexData(polyId, "tag_x").join().get().fetch("count", 0L));
+            assertEquals(2, async.read(polyId, Set.of("test_1", "test_2", "test_100")).join().list().size());
+            assertEquals(15L, async.count(polyId, BasicPolyQuery.builder().build()).join());
+            assertTrue(async.list().join().hasPoly(polyId));
+
+            BasicPolyQuery query = new BasicPolyQuery();
+            query.queryType(BasicPolyQuery.QueryFunction.CURSOR);
+            Set<String> ids = new HashSet<>();
+            BasicPolyList page = async.query(polyId, query).join();
+            ids.addAll(page.list().stream().map(BasicPoly::_id).toList());
+            query.cursor((String) page.getMetadata().get(BasicPolyQuery.NEXT_CURSOR));
+            ids.addAll(async.query(polyId, query).join().list().stream().map(BasicPoly::_id).toList());
+            assertEquals(15, ids.size());
+
+            List<String> streamed = new ArrayList<>();
+            assertEquals(15L, async.forEach(polyId, 4, poly -> streamed.add(poly._id())).join());
+            assertEquals(15, streamed.size());
+        }
+    }
+
     @Test
     void redisJcache() throws URISyntaxException, IOException {
         MutableConfiguration<String, BasicPoly> config = new MutableConfiguration<>();
@@ -0,0 +1,140 @@
+package com.unidev.polydata4.redis;
+
+import com.unidev.polydata4.api.ExecutorAsyncPolydata;
+import com.unidev.polydata4.api.NearCache;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
+
+import static com.unidev.polydata4.api.Polydata.CONFIG_KEY;
+import static com.unidev.polydata4.api.Polydata.METADATA_KEY;
+
+/**
+ * Async Redis storage which reads polys, dataset records and tag counters over non-blocking Lettuce connection.
+ * Writes, queries and scans run blocking {@link PolydataRedis} on executor, so write scripts and index maintenance
+ * stay in one place. Lettuce reads go to primaries, replicas of blocking storage are not used.
+ * Both flavors share near cache of blocking storage.
+ */
+public class LettuceAsyncPolydata extends ExecutorAsyncPolydata {
+
+    private final PolydataRedis polydata;
+    private final RedisClusterAsyncCommands<byte[], byte[]> commands;
+    private final Closeable connection;
+
+    /**
+     * Commands of standalone or cluster connection with byte array codec, connection closes Lettuce connection and client.
+     */
+    public LettuceAsyncPolydata(PolydataRedis polydata, RedisClusterAsyncCommands<byte[], byte[]> commands, Closeable connection,
+                                Executor executor, boolean ownExecutor) {
+        super(polydata, executor, ownExecutor);
+        this.polydata = polydata;
+        this.commands = commands;
+        this.connection = connection;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String dataset) {
+        return polydata.nearCache().getAsync(NearCache.Kind.EXISTS, dataset,
+                () -> commands.exists(polydata.datasetKey(dataset)).toCompletableFuture().thenApply(count -> count > 0),
+                Boolean::booleanValue, UnaryOperator.identity());
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> config(String dataset) {
+        return polydata.nearCache().getAsync(NearCache.Kind.CONFIG, dataset, () -> readPoly(dataset, CONFIG_KEY),
+                Optional::isPresent, NearCache::copy);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> metadata(String dataset) {
+        return exists(dataset).thenCompose(exists -> {
+            if (!exists) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            return polydata.nearCache().getAsync(NearCache.Kind.METADATA, dataset, () -> readPoly(dataset, METADATA_KEY),
+                    Optional::isPresent, NearCache::copy);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> index(String dataset) {
+        return exists(dataset).thenCompose(exists -> {
+            if (!exists) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            return commands.hgetall(polydata.fetchTagCountsId(dataset)).toCompletableFuture().thenCompose(counts -> {
+                if (!counts.isEmpty()) {
+                    return CompletableFuture.completedFuture(Optional.of(PolydataRedis.tagIndex(counts)));
+                }
+                return readPoly(dataset, PolydataRedis.TAG_INDEX_KEY)
+                        .thenApply(legacyIndex -> legacyIndex.isPresent() ? legacyIndex : Optional.of(PolydataRedis.tagIndex(counts)));
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BasicPoly>> indexData(String dataset, String indexId) {
+        return index(dataset).thenApply(index -> index.map(value -> value.<BasicPoly>fetch(indexId)));
+    }
+
+    /**
+     * Polys read with single MGET, missing polys are skipped.
+     */
+    @Override
+    public CompletableFuture<BasicPolyList> read(String dataset, Set<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(new BasicPolyList());
+        }
+        byte[][] keys = ids.stream().map(id -> polydata.fetchId(dataset, id)).toArray(byte[][]::new);
+        return commands.mget(keys).toCompletableFuture().thenApply(values -> {
+            BasicPolyList basicPolyList = new BasicPolyList();
+            for (KeyValue<byte[], byte[]> value : values) {
+                if (!value.hasValue()) {
+                    continue;
+                }
+                BasicPoly basicPoly = polydata.unpack(value.getValue());
+                if (basicPoly != null) {
+                    basicPolyList.add(basicPoly);
+                }
+            }
+            return basicPolyList;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BasicPolyList> list() {
+        return commands.lrange(PolydataRedis.POLY_LIST.getBytes(), 0, -1).toCompletableFuture().thenApply(datasets -> {
+            BasicPolyList polyList = new BasicPolyList();
+            for (byte[] dataset : datasets) {
+                polyList.add(BasicPoly.newPoly(new String(dataset)));
+            }
+            return polyList;
+        });
+    }
+
+    /**
+     * Close blocking storage and executor, then Lettuce connection.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private CompletableFuture<Optional<BasicPoly>> readPoly(String dataset, String id) {
+        return commands.get(polydata.fetchId(dataset, id)).toCompletableFuture().thenApply(polydata::record);
+    }
+
+}
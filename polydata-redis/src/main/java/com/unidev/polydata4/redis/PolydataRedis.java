@@ -1,7 +1,8 @@
 package com.unidev.polydata4.redis;
 
-import com.unidev.platform.Randoms;
 import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.NearCache;
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.api.packer.PolyPacker;
 import com.unidev.polydata4.domain.*;
 import lombok.Builder;
@@ -9,32 +10,87 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Polydata storage in Redis.
  */
-@RequiredArgsConstructor
 @Slf4j
 public class PolydataRedis extends AbstractPolydata {
 
     static final String POLY_LIST = "poly-list";
     static final String TAG_INDEX_KEY = "tag-index";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final String EMPTY_SHA1 = DigestUtils.sha1Hex(new byte[0]);
+    private static final byte[] ONE = "1".getBytes();
+    private static final byte[] ZERO = "0".getBytes();
+    static final int MAX_REDIRECTIONS = 5;
     private final PolydataRedisConfig polyConfig;
-    private final Randoms randoms = new Randoms();
+    private final RedisConnections connections;
+    /**
+     * Limits calls holding connections, callers wait on semaphore instead of pool, see {@link PolydataRedisConfig#maxConnections}.
+     */
+    private final Semaphore connectionPermits;
+    /**
+     * Time of last write of each dataset by this instance, such datasets are read from primary within staleness tolerance.
+     */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    /**
+     * Last score given to written poly, scores are milliseconds which increase by at least one per poly.
+     */
+    private final AtomicLong lastScore = new AtomicLong();
+
+    public PolydataRedis(PolydataRedisConfig polyConfig) {
+        this.polyConfig = polyConfig;
+        this.connections = polyConfig.connections();
+        this.connectionPermits = polyConfig.maxConnections > 0 ? new Semaphore(polyConfig.maxConnections, true) : null;
+    }
 
+    /**
+     * Load write scripts, datasets with tag index poly written before tag counters were introduced get counters filled,
+     * datasets written before poly id set was introduced get the set filled from their indexes.
+     */
     @Override
     public void prepareStorage() {
-
+        connections.forEachPrimary(jedis -> {
+            RedisScript.WRITE.load(jedis);
+            RedisScript.REMOVE.load(jedis);
+            RedisScript.PAGE.load(jedis);
+        });
+        for (BasicPoly dataset : list().list()) {
+            redis(datasetKey(dataset._id()), jedis -> {
+                if (jedis.exists(fetchId(dataset._id(), TAG_INDEX_KEY))) {
+                    log.info("Moving tag index of {} to tag counters", dataset._id());
+                    recalculateIndex(jedis, dataset._id());
+                }
+                if (!jedis.exists(fetchPolyIdsId(dataset._id()))) {
+                    fillPolyIds(jedis, dataset._id());
+                }
+            });
+        }
     }
 
     @Override
@@ -47,32 +103,37 @@ public class PolydataRedis extends AbstractPolydata {
         config.put(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
         config(dataset, config);
         metadata(dataset, BasicPoly.newPoly(METADATA_KEY));
-        redis(jedis -> {
+        redis(POLY_LIST.getBytes(), jedis -> {
             jedis.lpush(POLY_LIST, dataset);
         });
+        nearCache.invalidate(dataset);
         return config(dataset).get();
     }
 
+    /**
+     * Config poly is written on dataset creation, so its presence tells that dataset exists.
+     */
     @Override
     public boolean exists(String dataset) {
-        return list().hasPoly(dataset);
+        return cachedExists(dataset, () -> redis(datasetKey(dataset), jedis -> {
+            return jedis.exists(datasetKey(dataset));
+        }));
     }
 
     @Override
     public Optional<BasicPoly> config(String dataset) {
-        if (!exists(dataset)) {
-            return Optional.empty();
-        }
-        return redis(jedis -> {
+        return cachedConfig(dataset, () -> redis(datasetKey(dataset), jedis -> {
             return readPoly(jedis, dataset, CONFIG_KEY);
-        });
+        }));
     }
 
     @Override
     public void config(String dataset, BasicPoly config) {
-        redis(jedis -> {
+        redis(datasetKey(dataset), jedis -> {
             writePoly(jedis, dataset, config);
         });
+        nearCache.invalidate(NearCache.Kind.CONFIG, dataset);
+        written(dataset);
     }
 
     @Override
@@ -80,16 +141,18 @@ public class PolydataRedis extends AbstractPolydata {
         if (!exists(dataset)) {
             return Optional.empty();
         }
-        return redis(jedis -> {
+        return cachedMetadata(dataset, () -> redis(datasetKey(dataset), jedis -> {
             return readPoly(jedis, dataset, METADATA_KEY);
-        });
+        }));
     }
 
     @Override
     public void metadata(String dataset, BasicPoly metadata) {
-        redis(jedis -> {
+        redis(datasetKey(dataset), jedis -> {
             writePoly(jedis, dataset, metadata);
         });
+        nearCache.invalidate(NearCache.Kind.METADATA, dataset);
+        written(dataset);
     }
 
     @Override
@@ -97,11 +160,27 @@ public class PolydataRedis extends AbstractPolydata {
         if (!exists(dataset)) {
             return Optional.empty();
         }
-        return redis(jedis -> {
-            return readPoly(jedis, dataset, TAG_INDEX_KEY);
+        return redis(datasetKey(dataset), jedis -> {
+            Map<byte[], byte[]> counts = jedis.hgetAll(fetchTagCountsId(dataset));
+            if (counts.isEmpty()) {
+                Optional<BasicPoly> legacyIndex = readPoly(jedis, dataset, TAG_INDEX_KEY);
+                if (legacyIndex.isPresent()) {
+                    return legacyIndex;
+                }
+            }
+            return Optional.of(tagIndex(counts));
         });
     }
 
+    /**
+     * Tag index poly of tag counters hash.
+     */
+    static BasicPoly tagIndex(Map<byte[], byte[]> counts) {
+        BasicPoly tagIndex = BasicPoly.newPoly(TAG_INDEX_KEY);
+        counts.forEach((tag, count) -> tagIndex.put(new String(tag), BasicPoly.newPoly().with("count", Long.parseLong(new String(count)))));
+        return tagIndex;
+    }
+
     @Override
     public Optional<BasicPoly> indexData(String dataset, String indexId) {
         Optional<BasicPoly> index = index(dataset);
@@ -114,35 +193,104 @@ public class PolydataRedis extends AbstractPolydata {
     @Override
     public BasicPolyList insert(String dataset, InsertOptions insertOptions, Collection<InsertRequest> insertRequests) {
         final BasicPolyList basicPolyList = new BasicPolyList();
-        redis(jedis -> {
-            // build index data
-            for (InsertRequest insertRequest : insertRequests) {
-                Set<String> indexToPersist = insertRequest.getIndexToPersist();
-                if (CollectionUtils.isEmpty(indexToPersist)) {
-                    indexToPersist = new HashSet<>();
-                } else {
-                    indexToPersist = new HashSet<>(indexToPersist);
-                }
-                insertRequest.setIndexToPersist(indexToPersist);
-                insertRequest.getData().put(INDEXES, indexToPersist);
+        // build index data
+        for (InsertRequest insertRequest : insertRequests) {
+            Set<String> indexToPersist = insertRequest.getIndexToPersist();
+            if (CollectionUtils.isEmpty(indexToPersist)) {
+                indexToPersist = new HashSet<>();
+            } else {
+                indexToPersist = new HashSet<>(indexToPersist);
+            }
+            insertRequest.setIndexToPersist(indexToPersist);
+            insertRequest.getData().put(INDEXES, indexToPersist);
+        }
+        redis(datasetKey(dataset), jedis -> {
+            for (List<InsertRequest> batch : ListUtils.partition(new ArrayList<>(insertRequests), polyConfig.batchSize())) {
+                writeBatch(jedis, dataset, batch, !insertOptions.isSkipIndex());
             }
+        });
+        written(dataset);
+
+        return basicPolyList;
+    }
+
+    /**
+     * First of scores reserved for count polys, polys of batch get consecutive scores, so sorted set polys don't share a score
+     * and cursors continue after exact poly. Scores follow current time unless batches of this instance run ahead of it.
+     */
+    private long reserveScores(int count) {
+        return lastScore.updateAndGet(last -> Math.max(last, System.currentTimeMillis() - 1) + count) - count + 1;
+    }
 
-            for (InsertRequest insertRequest : insertRequests) {
-                BasicPoly polyToPersist = insertRequest.getData();
-                writePoly(jedis, dataset, polyToPersist);
-                removePolyFromIndex(jedis, dataset, polyToPersist);
-                for (String indexName : insertRequest.getIndexToPersist()) {
-                    // add poly it to list of polys
-                    byte[] indexId = fetchIndexId(dataset, indexName);
-                    jedis.lpush(indexId, insertRequest.getData()._id().getBytes());
+    /**
+     * Write batch of polys in two round trips: stored polys are read with MGET, then {@link RedisScript#WRITE} atomically
+     * writes polys, moves them between indexes and updates tag counters.
+     * Polys changed by another writer in between are read and written again.
+     */
+    private void writeBatch(Jedis jedis, String dataset, List<InsertRequest> batch, boolean countTags) {
+        List<InsertRequest> pending = batch;
+        while (!pending.isEmpty()) {
+            Map<String, byte[]> stored = readStored(jedis, dataset,
+                    pending.stream().map(request -> request.getData()._id()).collect(Collectors.toCollection(LinkedHashSet::new)));
+            Map<String, String> expected = new HashMap<>();
+            Map<String, Collection<String>> storedIndexes = new HashMap<>();
+            stored.forEach((id, value) -> {
+                expected.put(id, DigestUtils.sha1Hex(value));
+                storedIndexes.put(id, indexes(value));
+            });
+            List<byte[]> keys = new ArrayList<>();
+            keys.add(fetchTagCountsId(dataset));
+            keys.add(fetchTagRegistryId(dataset));
+            keys.add(fetchPolyIdsId(dataset));
+            List<byte[]> args = new ArrayList<>();
+            args.add(polyConfig.indexMode().name().getBytes());
+            args.add(String.valueOf(reserveScores(pending.size())).getBytes());
+            args.add(countTags ? ONE : ZERO);
+            args.add(String.valueOf(pending.size()).getBytes());
+            for (InsertRequest request : pending) {
+                BasicPoly poly = request.getData();
+                byte[] packed = pack(dataset, poly);
+                Set<String> indexes = request.getIndexToPersist();
+                List<String> leave = storedIndexes.getOrDefault(poly._id(), Collections.emptyList()).stream()
+                        .filter(index -> !indexes.contains(index))
+                        .collect(Collectors.toList());
+                keys.add(fetchId(dataset, poly._id()));
+                args.add(poly._id().getBytes());
+                args.add(packed);
+                args.add(expected.getOrDefault(poly._id(), EMPTY_SHA1).getBytes());
+                args.add(String.valueOf(leave.size()).getBytes());
+                args.add(String.valueOf(indexes.size()).getBytes());
+                for (String index : leave) {
+                    keys.add(fetchIndexId(dataset, index));
+                    args.add(index.getBytes());
                 }
+                for (String index : indexes) {
+                    keys.add(fetchIndexId(dataset, index));
+                    args.add(index.getBytes());
+                }
+                // the same poly later in batch expects this write
+                storedIndexes.put(poly._id(), indexes);
+                expected.put(poly._id(), DigestUtils.sha1Hex(packed));
             }
-            if (insertOptions.isSkipIndex()) {
-                rebuildIndex(jedis, dataset);
+            Set<String> conflicts = new HashSet<>(RedisScript.WRITE.execute(jedis, keys, args));
+            if (!conflicts.isEmpty()) {
+                log.debug("Polys {} of {} changed concurrently, writing again", conflicts, dataset);
             }
-        });
+            pending = pending.stream()
+                    .filter(request -> conflicts.contains(request.getData()._id()))
+                    .collect(Collectors.toList());
+        }
+    }
 
-        return basicPolyList;
+    /**
+     * Indexes listed in stored poly, empty when poly can't be unpacked.
+     */
+    private Collection<String> indexes(byte[] value) {
+        BasicPoly poly = unpack(value);
+        if (poly == null) {
+            return Collections.emptyList();
+        }
+        return poly.fetch(INDEXES, Collections.emptyList());
     }
 
     @Override
@@ -150,23 +298,142 @@ public class PolydataRedis extends AbstractPolydata {
         return insert(dataset, InsertOptions.defaultInsertOptions(), insertRequests);
     }
 
-    private void rebuildIndex(Jedis jedis, String dataset) {
-        byte[] pattern = fetchIndexId(dataset, "*");
-        Set<byte[]> keys = jedis.keys(pattern);
-        BasicPoly tagIndex = BasicPoly.newPoly(TAG_INDEX_KEY);
-        for (byte[] key : keys) {
-            String stringKey = StringUtils.replace(new String(key), new String(fetchIndexId(dataset, "")), "");
-            long length = jedis.llen(key);
-            tagIndex.put(stringKey, BasicPoly.newPoly().with("count", length));
+    /**
+     * Convert list indexes of dataset to sorted sets, indexes which are already sorted sets are skipped.
+     * Scores decrease by one millisecond from current time along each list, so list order is kept.
+     * Each list is replaced atomically and converted again if it changed during conversion.
+     *
+     * @return number of converted indexes
+     */
+    public int migrateToSortedSets(String dataset) {
+        return redis(datasetKey(dataset), jedis -> {
+            Set<String> tags = registeredTags(jedis, dataset);
+            long now = System.currentTimeMillis();
+            int converted = 0;
+            for (String tag : tags) {
+                byte[] indexId = fetchIndexId(dataset, tag);
+                Boolean done;
+                while ((done = convertToSortedSet(jedis, indexId, now)) == null) {
+                    log.info("Index {} of {} changed during conversion, retrying", tag, dataset);
+                }
+                if (done) {
+                    converted++;
+                }
+                jedis.sadd(fetchTagRegistryId(dataset), tag.getBytes());
+            }
+            log.info("Converted {} indexes of {}", converted, dataset);
+            return converted;
+        });
+    }
+
+    /**
+     * Replace list with sorted set, null when list was changed concurrently.
+     */
+    private Boolean convertToSortedSet(Jedis jedis, byte[] indexId, long now) {
+        jedis.watch(indexId);
+        if (!"list".equals(jedis.type(indexId))) {
+            jedis.unwatch();
+            return false;
+        }
+        List<byte[]> ids = jedis.lrange(indexId, 0, -1);
+        if (ids.isEmpty()) {
+            jedis.unwatch();
+            return false;
+        }
+        // head of list is the newest poly, members are added from the tail so the newest score of duplicates wins
+        Map<byte[], Double> scores = new LinkedHashMap<>();
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            scores.put(ids.get(i), (double) (now - i));
+        }
+        byte[] tmpId = (new String(indexId) + "-migration").getBytes();
+        Transaction transaction = jedis.multi();
+        transaction.del(tmpId);
+        transaction.zadd(tmpId, scores);
+        transaction.rename(tmpId, indexId);
+        return transaction.exec() == null ? null : true;
+    }
+
+    /**
+     * Fill poly id set with members of all indexes of dataset, indexes are read in chunks of batch size.
+     * Polys of older versions written without any tag are not in indexes and stay out of the set.
+     */
+    private void fillPolyIds(Jedis jedis, String dataset) {
+        byte[] idsId = fetchPolyIdsId(dataset);
+        int batchSize = polyConfig.batchSize();
+        long filled = 0;
+        for (String tag : registeredTags(jedis, dataset)) {
+            byte[] indexId = fetchIndexId(dataset, tag);
+            for (long start = 0; ; start += batchSize) {
+                Set<String> ids = polyConfig.indexMode().range(jedis, indexId, start, start + batchSize - 1).keySet();
+                if (!ids.isEmpty()) {
+                    jedis.sadd(idsId, ids.stream().map(String::getBytes).toArray(byte[][]::new));
+                    filled += ids.size();
+                }
+                if (ids.size() < batchSize) {
+                    break;
+                }
+            }
+        }
+        if (filled > 0) {
+            log.info("Filled poly id set of {} from {} index entries", dataset, filled);
         }
-        writePoly(jedis, dataset, tagIndex);
     }
 
-    private void removePolyFromIndex(Jedis jedis, String dataset, BasicPoly p) {
-        byte[] pattern = fetchIndexId(dataset, "*");
-        Set<byte[]> keys = jedis.keys(pattern);
-        for (byte[] index : keys) {
-            jedis.lrem(index, 0, p._id().getBytes());
+    /**
+     * Tags of registry set, datasets written before registry was introduced also get tags of stored tag index.
+     */
+    private Set<String> registeredTags(Jedis jedis, String dataset) {
+        Set<String> tags = new HashSet<>();
+        jedis.smembers(fetchTagRegistryId(dataset)).forEach(tag -> tags.add(new String(tag)));
+        if (tags.isEmpty()) {
+            readPoly(jedis, dataset, TAG_INDEX_KEY).ifPresent(index -> tags.addAll(index.data().keySet()));
+        }
+        return tags;
+    }
+
+    /**
+     * Rebuild tag counters from sizes of indexes in registry set, used after inserts with {@link InsertOptions#isSkipIndex()}.
+     */
+    public void recalculateIndex(String dataset) {
+        redis(datasetKey(dataset), jedis -> {
+            recalculateIndex(jedis, dataset);
+        });
+    }
+
+    /**
+     * Counters are replaced in a transaction, which is repeated if a counted write changed them during recalculation.
+     * Tags with empty indexes are dropped from registry, tag index poly of older versions is removed.
+     */
+    private void recalculateIndex(Jedis jedis, String dataset) {
+        byte[] countsId = fetchTagCountsId(dataset);
+        byte[] registryId = fetchTagRegistryId(dataset);
+        List<Object> result = null;
+        while (result == null) {
+            jedis.watch(countsId);
+            Set<String> tags = registeredTags(jedis, dataset);
+            Map<String, Response<Long>> lengths = new HashMap<>();
+            Pipeline pipeline = jedis.pipelined();
+            for (String tag : tags) {
+                lengths.put(tag, polyConfig.indexMode().size(pipeline, fetchIndexId(dataset, tag)));
+            }
+            pipeline.sync();
+
+            Map<byte[], byte[]> counts = new HashMap<>();
+            Transaction transaction = jedis.multi();
+            transaction.del(countsId);
+            lengths.forEach((tag, length) -> {
+                if (length.get() > 0) {
+                    counts.put(tag.getBytes(), String.valueOf(length.get()).getBytes());
+                    transaction.sadd(registryId, tag.getBytes());
+                } else {
+                    transaction.srem(registryId, tag.getBytes());
+                }
+            });
+            if (!counts.isEmpty()) {
+                transaction.hset(countsId, counts);
+            }
+            transaction.del(fetchId(dataset, TAG_INDEX_KEY));
+            result = transaction.exec();
         }
     }
 
@@ -177,61 +444,112 @@ public class PolydataRedis extends AbstractPolydata {
 
     @Override
     public BasicPolyList read(String dataset, Set<String> ids) {
-        return redis(jedis -> {
-            BasicPolyList basicPolyList = new BasicPolyList();
-            jedis.mget(
-                    ids.stream().map(id -> fetchId(dataset, id)).toArray(byte[][]::new)
-            ).forEach(polyData -> {
-                if (polyData == null) {
-                    return;
-                }
-                try {
-                    BasicPoly basicPoly = polyConfig.polyPacker.unPackPoly(new ByteArrayInputStream(polyData));
-                    basicPolyList.add(basicPoly);
-                } catch (Exception e) {
-                    log.error("Failed to unpack poly", e);
-                }
-            });
-            return basicPolyList;
+        return replicaRedis(dataset, jedis -> {
+            return readPolys(jedis, dataset, ids);
         });
     }
 
+    private BasicPolyList readPolys(Jedis jedis, String dataset, Set<String> ids) {
+        BasicPolyList basicPolyList = new BasicPolyList();
+        for (byte[] value : readStored(jedis, dataset, ids).values()) {
+            BasicPoly basicPoly = unpack(value);
+            if (basicPoly != null) {
+                basicPolyList.add(basicPoly);
+            }
+        }
+        return basicPolyList;
+    }
+
+    /**
+     * Stored values of polys by id, read with single MGET. Missing polys are skipped.
+     */
+    private Map<String, byte[]> readStored(Jedis jedis, String dataset, Set<String> ids) {
+        Map<String, byte[]> stored = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return stored;
+        }
+        List<String> idList = new ArrayList<>(ids);
+        List<byte[]> values = jedis.mget(idList.stream().map(id -> fetchId(dataset, id)).toArray(byte[][]::new));
+        for (int i = 0; i < idList.size(); i++) {
+            if (values.get(i) != null) {
+                stored.put(idList.get(i), values.get(i));
+            }
+        }
+        return stored;
+    }
+
+    BasicPoly unpack(byte[] value) {
+        try {
+            return polyConfig.polyPacker.unPackPoly(new ByteArrayInputStream(value));
+        } catch (Exception e) {
+            log.error("Failed to unpack poly", e);
+            return null;
+        }
+    }
+
+    /**
+     * Remove polys in batches, each batch is read with MGET and removed with {@link RedisScript#REMOVE},
+     * which atomically deletes polys, takes them out of indexes and decrements tag counters.
+     * Polys changed by another writer in between are read and removed again.
+     */
     @Override
     public BasicPolyList remove(String dataset, Set<String> ids) {
-        return redis(jedis -> {
-            byte[][] redisIds = ids.stream().map(id -> fetchId(dataset, id)).toArray(byte[][]::new);
-            BasicPolyList basicPolyList = read(dataset, ids);
-            // remove ids
-            for (byte[] id : redisIds) {
-                try {
-                    jedis.del(id);
-                } catch (Exception e) {
-                    log.error("Failed to delete poly", e);
-                }
-            }
-            // remove poly from indexes
-            for (BasicPoly p : basicPolyList.list()) {
-                Collection<String> indexes = p.fetch(INDEXES);
-                for (String index : indexes) {
-                    byte[] indexId = fetchIndexId(dataset, index);
-                    jedis.lrem(indexId, 0, p._id().getBytes());
+        BasicPolyList removedPolys = redis(datasetKey(dataset), jedis -> {
+            BasicPolyList basicPolyList = new BasicPolyList();
+            for (List<String> batch : ListUtils.partition(new ArrayList<>(ids), polyConfig.batchSize())) {
+                Set<String> pending = new LinkedHashSet<>(batch);
+                while (!pending.isEmpty()) {
+                    Map<String, byte[]> stored = readStored(jedis, dataset, pending);
+                    Map<String, BasicPoly> polys = new LinkedHashMap<>();
+                    List<byte[]> keys = new ArrayList<>();
+                    keys.add(fetchTagCountsId(dataset));
+                    keys.add(fetchTagRegistryId(dataset));
+                    keys.add(fetchPolyIdsId(dataset));
+                    List<byte[]> args = new ArrayList<>();
+                    args.add(polyConfig.indexMode().name().getBytes());
+                    args.add(String.valueOf(stored.size()).getBytes());
+                    stored.forEach((id, value) -> {
+                        BasicPoly poly = unpack(value);
+                        polys.put(id, poly);
+                        Collection<String> indexes = poly == null ? Collections.emptyList() : poly.fetch(INDEXES, Collections.emptyList());
+                        keys.add(fetchId(dataset, id));
+                        args.add(id.getBytes());
+                        args.add(DigestUtils.sha1Hex(value).getBytes());
+                        args.add(String.valueOf(indexes.size()).getBytes());
+                        for (String index : indexes) {
+                            keys.add(fetchIndexId(dataset, index));
+                            args.add(index.getBytes());
+                        }
+                    });
+                    if (stored.isEmpty()) {
+                        break;
+                    }
+                    Set<String> conflicts = new LinkedHashSet<>(RedisScript.REMOVE.execute(jedis, keys, args));
+                    polys.forEach((id, poly) -> {
+                        if (poly != null && !conflicts.contains(id)) {
+                            basicPolyList.add(poly);
+                        }
+                    });
+                    if (!conflicts.isEmpty()) {
+                        log.debug("Polys {} of {} changed concurrently, removing again", conflicts, dataset);
+                    }
+                    pending = conflicts;
                 }
             }
-            rebuildIndex(jedis, dataset);
             return basicPolyList;
         });
+        written(dataset);
+        return removedPolys;
     }
 
     @Override
     public BasicPolyList query(String dataset, PolyQuery polyQuery) {
-        return redis(jedis -> {
-            BasicPolyQuery query = (BasicPolyQuery) polyQuery;
-            Optional<BasicPoly> configPoly = config(dataset);
-
-            if (configPoly.isEmpty()) {
-                throw new RuntimeException("Poly " + dataset + " is not configured");
-            }
-
+        BasicPolyQuery query = (BasicPolyQuery) polyQuery;
+        Optional<BasicPoly> configPoly = config(dataset);
+        if (configPoly.isEmpty()) {
+            throw new RuntimeException("Poly " + dataset + " is not configured");
+        }
+        return replicaRedis(dataset, jedis -> {
             String index;
             String queryIndex = query.index();
             if (!StringUtils.isBlank(queryIndex)) {
@@ -244,39 +562,75 @@ public class PolydataRedis extends AbstractPolydata {
             Integer defaultItemPerPage = config.fetch(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
             Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
 
-            List<Integer> ids = new ArrayList<>();
-            if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
-                long count = jedis.llen(fetchIndexId(dataset, index));
-                int randomCount = query.option(RANDOM_COUNT, itemPerPage);
-
-                for (int i = 0; i < randomCount; i++) {
-                    ids.add(randoms.getRandom().nextInt((int) count));
-                }
-            } else {
-                final int page = query.page() < 0 ? 0 : query.page();
-                for (int i = page * itemPerPage; i < (page + 1) * itemPerPage; i++) {
-                    ids.add(i);
+            RedisIndexMode indexMode = polyConfig.indexMode();
+            byte[] indexId = fetchIndexId(dataset, index);
+            if (query.queryType() == BasicPolyQuery.QueryFunction.CURSOR) {
+                Optional<QueryCursor> cursor = QueryCursor.decode(query.cursor());
+                LinkedHashMap<String, Long> page = new LinkedHashMap<>();
+                BasicPolyList list = readPage(jedis, dataset, indexId, 0, itemPerPage, cursor.orElse(null), page);
+                if (page.size() == itemPerPage) {
+                    Map.Entry<String, Long> last = null;
+                    for (Map.Entry<String, Long> entry : page.entrySet()) {
+                        last = entry;
+                    }
+                    list.getMetadata().put(BasicPolyQuery.NEXT_CURSOR, new QueryCursor(last.getValue(), last.getKey()).encode());
                 }
+                return list;
             }
 
-            Set<String> indexIds = ids.stream()
-                    .map(id -> jedis.lindex(fetchIndexId(dataset, index), id))
-                    .filter(Objects::nonNull)
-                    .map(id -> new String(id))
-                    .collect(Collectors.toSet());
-
-            return read(dataset, indexIds);
+            if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
+                int randomCount = query.option(RANDOM_COUNT, itemPerPage);
+                return readPolys(jedis, dataset, indexMode.random(jedis, indexId, randomCount, ThreadLocalRandom.current()));
+            }
+            final long page = query.page() < 0 ? 0 : query.page();
+            return readPage(jedis, dataset, indexId, page * itemPerPage, itemPerPage, null, new LinkedHashMap<>());
         });
     }
 
+    /**
+     * Read page of index with its polys in one round trip with {@link RedisScript#PAGE}, page starts after cursor when it is set.
+     * Script can't build hashed poly keys, with hashed ids page is read with range and MGET on the same connection.
+     *
+     * @param page filled with ids of page and their cursor values
+     */
+    private BasicPolyList readPage(Jedis jedis, String dataset, byte[] indexId, long start, int size, QueryCursor cursor,
+                                   LinkedHashMap<String, Long> page) {
+        RedisIndexMode indexMode = polyConfig.indexMode();
+        if (polyConfig.hashIds) {
+            long from = cursor == null ? start : indexMode.cursorPosition(jedis, indexId, cursor);
+            page.putAll(indexMode.range(jedis, indexId, from, from + size - 1));
+            return readPolys(jedis, dataset, page.keySet());
+        }
+        List<byte[]> args = new ArrayList<>();
+        args.add(indexMode.name().getBytes());
+        args.add(fetchId(dataset, ""));
+        args.add(String.valueOf(start).getBytes());
+        args.add(String.valueOf(size).getBytes());
+        args.add(cursor == null ? new byte[0] : cursor.getId().getBytes());
+        args.add(String.valueOf(cursor == null ? 0 : cursor.getValue()).getBytes());
+        List<byte[]> result = RedisScript.PAGE.evaluate(jedis, List.of(indexId), args);
+        BasicPolyList list = new BasicPolyList();
+        for (int i = 0; i + 2 < result.size(); i += 3) {
+            String id = new String(result.get(i));
+            // lists may hold an id more than once
+            if (page.putIfAbsent(id, (long) Double.parseDouble(new String(result.get(i + 1)))) != null || result.get(i + 2) == null) {
+                continue;
+            }
+            BasicPoly poly = unpack(result.get(i + 2));
+            if (poly != null) {
+                list.add(poly);
+            }
+        }
+        return list;
+    }
+
     @Override
     public Long count(String dataset, PolyQuery polyQuery) {
-        return redis(jedis -> {
-            BasicPolyQuery query = (BasicPolyQuery) polyQuery;
-            Optional<BasicPoly> configPoly = config(dataset);
-            if (configPoly.isEmpty()) {
-                throw new RuntimeException("Poly " + dataset + " is not configured");
-            }
+        BasicPolyQuery query = (BasicPolyQuery) polyQuery;
+        if (config(dataset).isEmpty()) {
+            throw new RuntimeException("Poly " + dataset + " is not configured");
+        }
+        return replicaRedis(dataset, jedis -> {
             String index;
             String queryIndex = query.index();
             if (!StringUtils.isBlank(queryIndex)) {
@@ -285,13 +639,53 @@ public class PolydataRedis extends AbstractPolydata {
                 index = DATE_INDEX;
             }
             byte[] indexId = fetchIndexId(dataset, index);
-            return jedis.llen(indexId);
+            return polyConfig.indexMode().size(jedis, indexId);
         });
     }
 
+    /**
+     * Stream all polys of dataset, ids are scanned from poly id set in chunks of about fetchSize and resolved with MGET.
+     * Polys present during the whole scan are returned, SSCAN may return an id twice when the set is resized meanwhile.
+     * The set is scanned on primary, scan cursors are not portable between replicas.
+     */
+    @Override
+    public Stream<BasicPoly> stream(String dataset, int fetchSize) {
+        byte[] idsId = fetchPolyIdsId(dataset);
+        ScanParams scanParams = new ScanParams().count(fetchSize);
+        Iterator<List<BasicPoly>> chunks = new Iterator<>() {
+            byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+            boolean last = false;
+
+            @Override
+            public boolean hasNext() {
+                return !last;
+            }
+
+            @Override
+            public List<BasicPoly> next() {
+                if (last) {
+                    throw new NoSuchElementException();
+                }
+                ScanResult<byte[]> result = redis(idsId, jedis -> {
+                    return jedis.sscan(idsId, cursor, scanParams);
+                });
+                cursor = result.getCursorAsBytes();
+                last = result.isCompleteIteration();
+                if (result.getResult().isEmpty()) {
+                    return Collections.emptyList();
+                }
+                Set<String> chunkIds = new LinkedHashSet<>();
+                result.getResult().forEach(id -> chunkIds.add(new String(id)));
+                return read(dataset, chunkIds).list();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
     @Override
     public BasicPolyList list() {
-        return redis(jedis -> {
+        return redis(POLY_LIST.getBytes(), jedis -> {
             BasicPolyList polyList = new BasicPolyList();
             for (String dataset : jedis.lrange(POLY_LIST, 0, -1)) {
                 polyList.add(BasicPoly.newPoly(dataset));
@@ -307,40 +701,128 @@ public class PolydataRedis extends AbstractPolydata {
 
     @Override
     public void close() throws IOException {
+        connections.close();
+    }
 
+    byte[] fetchId(String dataset, String id) {
+        return key(dataset, "-" + id);
     }
 
-    private byte[] fetchId(String dataset, String id) {
-        String value = polyConfig.prefix + dataset + "-" + id;
-        if (!polyConfig.hashIds) {
-            return value.getBytes();
-        }
-        return DigestUtils.sha256Hex(value).toLowerCase().getBytes();
+    /**
+     * Hash of tag name to number of polys in its index, updated by write scripts.
+     */
+    byte[] fetchTagCountsId(String dataset) {
+        return key(dataset, "-tag-counts");
+    }
+
+    /**
+     * Set of tag names used in dataset, index lists are found through it instead of key scans.
+     */
+    private byte[] fetchTagRegistryId(String dataset) {
+        return key(dataset, "-tags");
+    }
+
+    /**
+     * Set of ids of all polys in dataset, maintained by write scripts and scanned by {@link #stream(String, int)}.
+     */
+    private byte[] fetchPolyIdsId(String dataset) {
+        return key(dataset, "-poly-ids");
     }
 
     private byte[] fetchIndexId(String dataset, String id) {
-        String value = polyConfig.prefix + dataset + "-index-" + id;
+        return key(dataset, "-index-" + id);
+    }
+
+    /**
+     * Key used to route commands of dataset, all keys of dataset share its node when hash tags are enabled.
+     */
+    byte[] datasetKey(String dataset) {
+        return fetchId(dataset, CONFIG_KEY);
+    }
+
+    /**
+     * Key of dataset value, with hash tags the prefix and dataset part is wrapped in braces, so keys of dataset share hash slot.
+     */
+    private byte[] key(String dataset, String suffix) {
+        String value = polyConfig.prefix + dataset + suffix;
         if (!polyConfig.hashIds) {
+            if (polyConfig.hashTags) {
+                return ("{" + polyConfig.prefix + dataset + "}" + suffix).getBytes();
+            }
             return value.getBytes();
         }
-        return DigestUtils.sha256Hex(value).toLowerCase().getBytes();
+        String hash = DigestUtils.sha256Hex(value).toLowerCase();
+        if (polyConfig.hashTags) {
+            return ("{" + DigestUtils.sha256Hex(polyConfig.prefix + dataset).toLowerCase() + "}" + hash).getBytes();
+        }
+        return hash.getBytes();
     }
 
     /**
-     * Execute logic on redis connection.
+     * Execute logic on connection of node which owns key, logic is repeated when node redirects to another one.
      */
-    private <R> R redis(Function<Jedis, R> logic) {
-        try (Jedis jedis = polyConfig.pool.getResource()) {
-            return logic.apply(jedis);
-        }
+    private <R> R redis(byte[] key, Function<Jedis, R> logic) {
+        return execute(key, () -> connections.primary(key), logic);
     }
 
     /**
-     * Execute logic on redis connection.
+     * Execute logic on connection of node which owns key.
      */
-    private void redis(Consumer<Jedis> logic) {
-        try (Jedis jedis = polyConfig.pool.getResource()) {
+    private void redis(byte[] key, Consumer<Jedis> logic) {
+        redis(key, jedis -> {
             logic.accept(jedis);
+            return null;
+        });
+    }
+
+    /**
+     * Execute read of dataset on replica within staleness tolerance,
+     * datasets written by this instance within the tolerance are read from primary.
+     */
+    private <R> R replicaRedis(String dataset, Function<Jedis, R> logic) {
+        long staleness = polyConfig.replicaStalenessMillis;
+        Long lastWrite = lastWrites.get(dataset);
+        byte[] key = datasetKey(dataset);
+        if (staleness <= 0 || (lastWrite != null && System.currentTimeMillis() - lastWrite <= staleness)) {
+            return redis(key, logic);
+        }
+        return execute(key, () -> connections.replica(key, staleness), logic);
+    }
+
+    private <R> R execute(byte[] key, Supplier<Jedis> connection, Function<Jedis, R> logic) {
+        if (connectionPermits == null) {
+            return executeRedirected(key, connection, logic);
+        }
+        try {
+            connectionPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            return executeRedirected(key, connection, logic);
+        } finally {
+            connectionPermits.release();
+        }
+    }
+
+    private <R> R executeRedirected(byte[] key, Supplier<Jedis> connection, Function<Jedis, R> logic) {
+        for (int attempt = 1; ; attempt++) {
+            try (Jedis jedis = connection.get()) {
+                return logic.apply(jedis);
+            } catch (JedisRedirectionException e) {
+                if (attempt >= MAX_REDIRECTIONS) {
+                    throw e;
+                }
+                log.debug("Redirected to {}, refreshing slots", e.getTargetNode());
+                connections.redirected(key);
+            }
+        }
+    }
+
+    private void written(String dataset) {
+        if (polyConfig.replicaStalenessMillis > 0) {
+            lastWrites.put(dataset, System.currentTimeMillis());
         }
     }
 
@@ -357,11 +839,26 @@ public class PolydataRedis extends AbstractPolydata {
         }
     }
 
+    private byte[] pack(String dataset, BasicPoly poly) {
+        try {
+            return polyConfig.packer(dataset).packPoly(poly);
+        } catch (Exception e) {
+            log.error("Failed to pack poly {}", poly._id(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Read raw poly from redis.
      */
     public Optional<BasicPoly> readPoly(Jedis jedis, String dataset, String id) {
-        byte[] value = jedis.get(fetchId(dataset, id));
+        return record(jedis.get(fetchId(dataset, id)));
+    }
+
+    /**
+     * Raw poly of stored value, empty when value is missing.
+     */
+    Optional<BasicPoly> record(byte[] value) {
         if (value == null || value.length == 0) {
             return Optional.empty();
         }
@@ -378,11 +875,68 @@ public class PolydataRedis extends AbstractPolydata {
     public static class PolydataRedisConfig {
         final String prefix;
 
+        /**
+         * Single node pool, used when connections are not set.
+         */
         final JedisPool pool;
 
+        /**
+         * Node connections, e.g. {@link RedisClusterConnections} or {@link RedisPoolConnections} with replicas.
+         */
+        final RedisConnections connections;
+
         final PolyPacker polyPacker;
 
+        /**
+         * Packers of polys written to datasets, e.g. Zstd with dictionary trained on dataset, other datasets use polyPacker.
+         * Polys are read with polyPacker, so packers should come from the same registry and write payloads it can read.
+         */
+        final Map<String, PolyPacker> datasetPackers;
+
         final boolean hashIds;
 
+        /**
+         * Wrap prefix and dataset of keys in hash tag, so keys of dataset are stored in one cluster slot. Changes key names.
+         */
+        final boolean hashTags;
+
+        /**
+         * Read, query and count may return data older by this many milliseconds, which allows them to use replicas.
+         * Datasets written by this instance are read from primary for this long. 0 reads from primary only.
+         */
+        final long replicaStalenessMillis;
+
+        /**
+         * Polys written or removed per pipeline, each batch takes a fixed number of round trips. 0 uses {@link #DEFAULT_BATCH_SIZE}.
+         */
+        final int batchSize;
+
+        /**
+         * Structure of tag indexes, null uses lists. Existing list indexes are converted by {@link RedisIndexMigration}.
+         */
+        final RedisIndexMode indexMode;
+
+        /**
+         * Calls holding a connection at once, others wait on a semaphore.
+         * Should not exceed max total of pool, so pool never blocks in getResource. 0 leaves waiting to the pool.
+         */
+        final int maxConnections;
+
+        PolyPacker packer(String dataset) {
+            return datasetPackers == null ? polyPacker : datasetPackers.getOrDefault(dataset, polyPacker);
+        }
+
+        int batchSize() {
+            return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        }
+
+        RedisIndexMode indexMode() {
+            return indexMode == null ? RedisIndexMode.LIST : indexMode;
+        }
+
+        RedisConnections connections() {
+            return connections != null ? connections : new RedisPoolConnections(pool);
+        }
+
     }
 }
@@ -0,0 +1,56 @@
+package com.unidev.polydata4.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.function.Consumer;
+
+/**
+ * Redis Cluster connections, key is routed to the primary of its hash slot.
+ * Jedis keeps only primaries in slot mapping, so reads are sent to primaries as well.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RedisClusterConnections implements RedisConnections {
+
+    private final JedisCluster cluster;
+
+    @Override
+    public Jedis primary(byte[] key) {
+        return cluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(key));
+    }
+
+    @Override
+    public Jedis replica(byte[] key, long maxStalenessMillis) {
+        return primary(key);
+    }
+
+    /**
+     * Cluster client refreshes slot mapping when its own command is redirected.
+     */
+    @Override
+    public void redirected(byte[] key) {
+        cluster.exists(key);
+    }
+
+    @Override
+    public void forEachPrimary(Consumer<Jedis> logic) {
+        for (JedisPool pool : cluster.getClusterNodes().values()) {
+            try (Jedis jedis = pool.getResource()) {
+                if (jedis.info("replication").contains("role:master")) {
+                    logic.accept(jedis);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        cluster.close();
+    }
+
+}
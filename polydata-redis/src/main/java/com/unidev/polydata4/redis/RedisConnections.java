@@ -0,0 +1,37 @@
+package com.unidev.polydata4.redis;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Connections of {@link PolydataRedis}, commands are sent to the node which owns their key.
+ * Keys of one dataset share hash tag in cluster, so batches, MGET and scripts of a dataset run on a single node.
+ */
+public interface RedisConnections extends Closeable {
+
+    /**
+     * Connection to node which owns key, used for writes and reads which must see the latest state.
+     */
+    Jedis primary(byte[] key);
+
+    /**
+     * Connection for reads of key which accept data older by up to maxStalenessMillis, primary when no replica qualifies.
+     */
+    Jedis replica(byte[] key, long maxStalenessMillis);
+
+    /**
+     * Node answered with redirection for key, slot mapping is refreshed before retry.
+     */
+    void redirected(byte[] key);
+
+    /**
+     * Execute logic on each primary node.
+     */
+    void forEachPrimary(Consumer<Jedis> logic);
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,51 @@
+package com.unidev.polydata4.redis;
+
+import com.unidev.polydata4.api.packer.PolyPackerRegistry;
+import com.unidev.polydata4.domain.BasicPoly;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPool;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool which converts list tag indexes of datasets to sorted sets, see {@link PolydataRedis#migrateToSortedSets(String)}.
+ * Usage: {@code RedisIndexMigration [--hash-ids] <redis-uri> <prefix> <dataset>...}, all datasets are converted when none is listed.
+ * Storage should be switched to {@code index-mode: sorted-set} after conversion, list mode can't read sorted sets.
+ */
+@Slf4j
+public final class RedisIndexMigration {
+
+    private RedisIndexMigration() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        boolean hashIds = arguments.remove("--hash-ids");
+        if (arguments.size() < 2) {
+            System.err.println("Usage: RedisIndexMigration [--hash-ids] <redis-uri> <prefix> <dataset>...");
+            System.exit(1);
+        }
+        URI uri = URI.create(arguments.get(0));
+        try (JedisPool pool = new JedisPool(uri.getHost(), uri.getPort())) {
+            PolydataRedis polydata = new PolydataRedis(PolydataRedis.PolydataRedisConfig.builder()
+                    .pool(pool)
+                    .prefix(arguments.get(1))
+                    .hashIds(hashIds)
+                    .polyPacker(PolyPackerRegistry.defaultRegistry().headerPacker("json"))
+                    .build());
+            List<String> datasets = arguments.subList(2, arguments.size());
+            if (datasets.isEmpty()) {
+                datasets = new ArrayList<>();
+                for (BasicPoly dataset : polydata.list().list()) {
+                    datasets.add(dataset._id());
+                }
+            }
+            for (String dataset : datasets) {
+                log.info("Dataset {}: {} indexes converted", dataset, polydata.migrateToSortedSets(dataset));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.unidev.polydata4.redis;
+
+import com.unidev.polydata4.api.QueryCursor;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+
+import java.util.*;
+
+/**
+ * Structure of tag indexes in {@link PolydataRedis}.
+ * Ranges are returned as poly id to cursor value, which is position for lists and score for sorted sets.
+ */
+public enum RedisIndexMode {
+
+    /**
+     * Lists in insertion order, newest first. Removal and cursor lookup are O(n).
+     */
+    LIST {
+        @Override
+        Response<Long> size(Pipeline pipeline, byte[] indexId) {
+            return pipeline.llen(indexId);
+        }
+
+        @Override
+        long size(Jedis jedis, byte[] indexId) {
+            return jedis.llen(indexId);
+        }
+
+        @Override
+        LinkedHashMap<String, Long> range(Jedis jedis, byte[] indexId, long start, long end) {
+            LinkedHashMap<String, Long> range = new LinkedHashMap<>();
+            long position = start;
+            for (byte[] id : jedis.lrange(indexId, start, end)) {
+                range.putIfAbsent(new String(id), position++);
+            }
+            return range;
+        }
+
+        @Override
+        Set<String> random(Jedis jedis, byte[] indexId, int count, Random random) {
+            long size = jedis.llen(indexId);
+            Set<String> ids = new HashSet<>();
+            if (size == 0) {
+                return ids;
+            }
+            // distinct positions, so up to count different polys are returned
+            Set<Integer> positions = new HashSet<>();
+            while (positions.size() < Math.min(count, size)) {
+                positions.add(random.nextInt((int) size));
+            }
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<byte[]>> responses = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                responses.add(pipeline.lindex(indexId, position));
+            }
+            pipeline.sync();
+            responses.stream().map(Response::get).filter(Objects::nonNull).forEach(id -> ids.add(new String(id)));
+            return ids;
+        }
+
+        /**
+         * Lists have no scores so cursor value is the position of last poly.
+         * New polys are pushed to the head of the list, so the last poly is looked up again if it moved.
+         */
+        @Override
+        long cursorPosition(Jedis jedis, byte[] indexId, QueryCursor cursor) {
+            byte[] atPosition = jedis.lindex(indexId, cursor.getValue());
+            if (atPosition != null && cursor.getId().equals(new String(atPosition))) {
+                return cursor.getValue() + 1;
+            }
+            Long position = jedis.lpos(indexId, cursor.getId().getBytes());
+            if (position != null) {
+                return position + 1;
+            }
+            // last poly was removed, continue from its old position
+            return cursor.getValue();
+        }
+    },
+
+    /**
+     * Sorted sets scored by update time, newest first. Ids are unique, changes and lookups are O(log n).
+     */
+    SORTED_SET {
+        @Override
+        Response<Long> size(Pipeline pipeline, byte[] indexId) {
+            return pipeline.zcard(indexId);
+        }
+
+        @Override
+        long size(Jedis jedis, byte[] indexId) {
+            return jedis.zcard(indexId);
+        }
+
+        @Override
+        LinkedHashMap<String, Long> range(Jedis jedis, byte[] indexId, long start, long end) {
+            LinkedHashMap<String, Long> range = new LinkedHashMap<>();
+            for (Tuple tuple : jedis.zrevrangeWithScores(indexId, start, end)) {
+                range.put(tuple.getElement(), (long) tuple.getScore());
+            }
+            return range;
+        }
+
+        @Override
+        Set<String> random(Jedis jedis, byte[] indexId, int count, Random random) {
+            Set<String> ids = new HashSet<>();
+            jedis.zrandmember(indexId, count).forEach(id -> ids.add(new String(id)));
+            return ids;
+        }
+
+        /**
+         * Cursor value is the score of last poly, when the poly was updated or removed
+         * the page continues after polys with higher scores.
+         */
+        @Override
+        long cursorPosition(Jedis jedis, byte[] indexId, QueryCursor cursor) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Double> score = pipeline.zscore(indexId, cursor.getId().getBytes());
+            Response<Long> rank = pipeline.zrevrank(indexId, cursor.getId().getBytes());
+            pipeline.sync();
+            if (score.get() != null && score.get().longValue() == cursor.getValue() && rank.get() != null) {
+                return rank.get() + 1;
+            }
+            return jedis.zcount(indexId, ("(" + cursor.getValue()).getBytes(), "+inf".getBytes());
+        }
+    };
+
+    abstract Response<Long> size(Pipeline pipeline, byte[] indexId);
+
+    abstract long size(Jedis jedis, byte[] indexId);
+
+    /**
+     * Ids from start to end position inclusive, newest first.
+     */
+    abstract LinkedHashMap<String, Long> range(Jedis jedis, byte[] indexId, long start, long end);
+
+    abstract Set<String> random(Jedis jedis, byte[] indexId, int count, Random random);
+
+    /**
+     * Position of the first poly after cursor.
+     */
+    abstract long cursorPosition(Jedis jedis, byte[] indexId, QueryCursor cursor);
+
+    /**
+     * Mode by config name, "list" or "sorted-set".
+     */
+    public static RedisIndexMode of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.unidev.polydata4.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Connections of a single primary with optional read replicas.
+ * Every check interval a heartbeat timestamp is written to primary and read back from replicas,
+ * a replica which returned heartbeat written t ms ago has all writes older than t, so it serves reads which tolerate t.
+ * Staleness tolerance should be larger than check interval, replicas which don't answer are skipped until next check.
+ */
+@Slf4j
+public class RedisPoolConnections implements RedisConnections {
+
+    public static final String HEARTBEAT_KEY = "polydata-replica-heartbeat";
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 500;
+
+    private final JedisPool pool;
+    private final List<JedisPool> replicas;
+    /**
+     * Heartbeat timestamp seen on each replica, 0 when replica is not usable.
+     */
+    private final AtomicLongArray heartbeats;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    public RedisPoolConnections(JedisPool pool) {
+        this(pool, Collections.emptyList(), DEFAULT_CHECK_INTERVAL_MILLIS);
+    }
+
+    public RedisPoolConnections(JedisPool pool, List<JedisPool> replicas, long checkIntervalMillis) {
+        this.pool = pool;
+        this.replicas = new ArrayList<>(replicas);
+        this.heartbeats = new AtomicLongArray(replicas.size());
+        if (replicas.isEmpty()) {
+            checker = null;
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "polydata-redis-replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write new heartbeat to primary and read heartbeats which reached replicas.
+     */
+    void checkReplicas() {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.set(HEARTBEAT_KEY, String.valueOf(System.currentTimeMillis()));
+        } catch (JedisException e) {
+            log.warn("Failed to write replica heartbeat", e);
+        }
+        for (int i = 0; i < replicas.size(); i++) {
+            try (Jedis jedis = replicas.get(i).getResource()) {
+                String heartbeat = jedis.get(HEARTBEAT_KEY);
+                heartbeats.set(i, heartbeat == null ? 0 : Long.parseLong(heartbeat));
+            } catch (JedisException | NumberFormatException e) {
+                log.debug("Replica {} is not usable", i, e);
+                heartbeats.set(i, 0);
+            }
+        }
+    }
+
+    @Override
+    public Jedis primary(byte[] key) {
+        return pool.getResource();
+    }
+
+    /**
+     * Replicas are taken in turn, replica which fails to give connection is skipped until next check.
+     */
+    @Override
+    public Jedis replica(byte[] key, long maxStalenessMillis) {
+        if (maxStalenessMillis > 0 && !replicas.isEmpty()) {
+            long now = System.currentTimeMillis();
+            int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                int replica = (start + i) % replicas.size();
+                long heartbeat = heartbeats.get(replica);
+                if (heartbeat == 0 || now - heartbeat > maxStalenessMillis) {
+                    continue;
+                }
+                try {
+                    return replicas.get(replica).getResource();
+                } catch (JedisException e) {
+                    log.warn("Failed to connect to replica {}", replica, e);
+                    heartbeats.set(replica, 0);
+                }
+            }
+        }
+        return primary(key);
+    }
+
+    @Override
+    public void redirected(byte[] key) {
+        // single node doesn't redirect
+    }
+
+    @Override
+    public void forEachPrimary(Consumer<Jedis> logic) {
+        try (Jedis jedis = pool.getResource()) {
+            logic.accept(jedis);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        replicas.forEach(JedisPool::close);
+        pool.close();
+    }
+
+}
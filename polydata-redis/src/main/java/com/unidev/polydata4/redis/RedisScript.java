@@ -0,0 +1,71 @@
+package com.unidev.polydata4.redis;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lua script from classpath, executed with EVALSHA.
+ * Script is loaded again when server doesn't know it, e.g. after restart or SCRIPT FLUSH.
+ */
+class RedisScript {
+
+    static final RedisScript WRITE = new RedisScript("polydata-redis/write.lua");
+    static final RedisScript REMOVE = new RedisScript("polydata-redis/remove.lua");
+    static final RedisScript PAGE = new RedisScript("polydata-redis/page.lua");
+
+    private final byte[] source;
+    private final byte[] sha1;
+
+    RedisScript(String resource) {
+        try (InputStream inputStream = RedisScript.class.getClassLoader().getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing script " + resource);
+            }
+            source = inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        sha1 = DigestUtils.sha1Hex(source).getBytes(StandardCharsets.UTF_8);
+    }
+
+    void load(Jedis jedis) {
+        jedis.scriptLoad(source);
+    }
+
+    /**
+     * Execute script, returned array of bulk strings is converted to strings.
+     */
+    List<String> execute(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        List<String> values = new ArrayList<>();
+        for (byte[] value : evaluate(jedis, keys, args)) {
+            values.add(new String(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    /**
+     * Execute script which returns array of bulk strings, nil elements are kept as null.
+     */
+    @SuppressWarnings("unchecked")
+    List<byte[]> evaluate(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        Object result;
+        try {
+            result = jedis.evalsha(sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            load(jedis);
+            result = jedis.evalsha(sha1, keys, args);
+        }
+        if (result instanceof List) {
+            return (List<byte[]>) result;
+        }
+        return new ArrayList<>();
+    }
+
+}
@@ -0,0 +1,55 @@
+-- Read page of index together with stored polys.
+-- KEYS: index
+-- ARGV: index mode, poly key prefix, start position, page size, cursor id and cursor value, empty cursor id for offset pages
+-- Returns id, cursor value and stored poly of each indexed poly of page, newest first. Value of missing poly is nil.
+local index, prefix = KEYS[1], ARGV[2]
+local sortedSet = ARGV[1] == 'SORTED_SET'
+local start, size, cursorId = tonumber(ARGV[3]), tonumber(ARGV[4]), ARGV[5]
+
+-- page continues after cursor poly, or from its old place when the poly was moved or removed
+if cursorId ~= '' then
+    local cursorValue = tonumber(ARGV[6])
+    if sortedSet then
+        local score = redis.call('ZSCORE', index, cursorId)
+        local rank = redis.call('ZREVRANK', index, cursorId)
+        if score and rank and math.floor(tonumber(score)) == cursorValue then
+            start = rank + 1
+        else
+            start = redis.call('ZCOUNT', index, '(' .. ARGV[6], '+inf')
+        end
+    elseif redis.call('LINDEX', index, cursorValue) == cursorId then
+        start = cursorValue + 1
+    else
+        local position = redis.call('LPOS', index, cursorId)
+        start = position and position + 1 or cursorValue
+    end
+end
+
+local ids, values = {}, {}
+if sortedSet then
+    local range = redis.call('ZREVRANGE', index, start, start + size - 1, 'WITHSCORES')
+    for i = 1, #range, 2 do
+        ids[#ids + 1] = range[i]
+        values[#values + 1] = range[i + 1]
+    end
+else
+    for i, id in ipairs(redis.call('LRANGE', index, start, start + size - 1)) do
+        ids[i] = id
+        values[i] = string.format('%d', start + i - 1)
+    end
+end
+
+local page = {}
+if #ids > 0 then
+    local keys = {}
+    for i, id in ipairs(ids) do
+        keys[i] = prefix .. id
+    end
+    local polys = redis.call('MGET', unpack(keys))
+    for i, id in ipairs(ids) do
+        page[#page + 1] = id
+        page[#page + 1] = values[i]
+        page[#page + 1] = polys[i]
+    end
+end
+return page
@@ -0,0 +1,38 @@
+-- Remove batch of polys with their tag memberships and tag counters.
+-- KEYS: tag counts hash, tag registry set, poly id set, then for each poly: poly key, its indexes
+-- ARGV: index mode, number of polys, then for each poly: id, sha1 of expected stored poly, number of indexes, their tags
+-- Polys changed since expected value was read are not removed, their ids are returned.
+local counts, registry, ids = KEYS[1], KEYS[2], KEYS[3]
+local sortedSet = ARGV[1] == 'SORTED_SET'
+
+local conflicts = {}
+local k, a = 4, 3
+for _ = 1, tonumber(ARGV[2]) do
+    local key, id, expected, indexes = KEYS[k], ARGV[a], ARGV[a + 1], tonumber(ARGV[a + 2])
+    if redis.sha1hex(redis.call('GET', key) or '') ~= expected then
+        conflicts[#conflicts + 1] = id
+    else
+        redis.call('DEL', key)
+        redis.call('SREM', ids, id)
+        for i = 1, indexes do
+            local index, tag = KEYS[k + i], ARGV[a + 2 + i]
+            local removed, size
+            if sortedSet then
+                removed = redis.call('ZREM', index, id)
+                size = redis.call('ZCARD', index)
+            else
+                removed = redis.call('LREM', index, 0, id)
+                size = redis.call('LLEN', index)
+            end
+            if removed > 0 and redis.call('HINCRBY', counts, tag, -1) <= 0 then
+                redis.call('HDEL', counts, tag)
+            end
+            if size == 0 then
+                redis.call('SREM', registry, tag)
+            end
+        end
+    end
+    k = k + 1 + indexes
+    a = a + 3 + indexes
+end
+return conflicts
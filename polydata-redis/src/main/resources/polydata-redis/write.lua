@@ -0,0 +1,63 @@
+-- Write batch of polys with their tag memberships and tag counters.
+-- KEYS: tag counts hash, tag registry set, poly id set, then for each poly: poly key, indexes to leave, indexes to join
+-- ARGV: index mode, score of first poly, count flag, number of polys, then for each poly:
+--       id, packed poly, sha1 of expected stored poly, number of indexes to leave, number of indexes to join, their tags
+-- Polys changed since expected value was read are not written, their ids are returned.
+-- Each poly is scored one above the previous one, so polys of batch don't share a score in sorted sets.
+local counts, registry, ids = KEYS[1], KEYS[2], KEYS[3]
+local sortedSet, firstScore, count = ARGV[1] == 'SORTED_SET', tonumber(ARGV[2]), ARGV[3] == '1'
+
+-- returns 1 when poly was in index and 0 otherwise, emptied index is dropped from registry
+local function leave(index, tag, id)
+    local removed, size
+    if sortedSet then
+        removed = redis.call('ZREM', index, id)
+        size = redis.call('ZCARD', index)
+    else
+        removed = redis.call('LREM', index, 0, id)
+        size = redis.call('LLEN', index)
+    end
+    if size == 0 then
+        redis.call('SREM', registry, tag)
+    end
+    return removed > 0 and 1 or 0
+end
+
+-- returns 1 when poly is new in index and 0 when it was moved to the head
+local function join(index, id, score)
+    if sortedSet then
+        return redis.call('ZADD', index, string.format('%d', score), id)
+    end
+    local moved = redis.call('LREM', index, 0, id)
+    redis.call('LPUSH', index, id)
+    return moved > 0 and 0 or 1
+end
+
+local conflicts = {}
+local k, a = 4, 5
+for n = 1, tonumber(ARGV[4]) do
+    local key, id, poly, expected = KEYS[k], ARGV[a], ARGV[a + 1], ARGV[a + 2]
+    local leaves, joins = tonumber(ARGV[a + 3]), tonumber(ARGV[a + 4])
+    if redis.sha1hex(redis.call('GET', key) or '') ~= expected then
+        conflicts[#conflicts + 1] = id
+    else
+        redis.call('SET', key, poly)
+        redis.call('SADD', ids, id)
+        for i = 1, leaves do
+            local index, tag = KEYS[k + i], ARGV[a + 4 + i]
+            if leave(index, tag, id) > 0 and count and redis.call('HINCRBY', counts, tag, -1) <= 0 then
+                redis.call('HDEL', counts, tag)
+            end
+        end
+        for i = leaves + 1, leaves + joins do
+            local index, tag = KEYS[k + i], ARGV[a + 4 + i]
+            redis.call('SADD', registry, tag)
+            if join(index, id, firstScore + n - 1) > 0 and count then
+                redis.call('HINCRBY', counts, tag, 1)
+            end
+        end
+    end
+    k = k + 1 + leaves + joins
+    a = a + 5 + leaves + joins
+end
+return conflicts
@@ -1,17 +1,37 @@
 package com.unidev.polydata4.redis;
 
 import com.unidev.polydata4.api.packer.NoOpPolyPacker;
+import com.unidev.polydata4.api.packer.PolyPackerRegistry;
+import com.unidev.polydata4.api.packer.ZstdPolyPacker;
 import com.unidev.polydata4.domain.BasicPoly;
 import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import com.unidev.polydata4.domain.InsertOptions;
+import com.unidev.polydata4.domain.InsertRequest;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,6 +42,7 @@ public class PolydataRedisTest {
     private final GenericContainer redis = new GenericContainer("redis:7.0.5")
             .withExposedPorts(6379);
 
+    JedisPool jedisPool;
     PolydataRedis polydata;
     String polyId = "";
 
@@ -39,11 +60,12 @@ public class PolydataRedisTest {
         poolConfig.setTimeBetweenEvictionRunsMillis(Duration.ofSeconds(30).toMillis());
         poolConfig.setNumTestsPerEvictionRun(3);
 
-        JedisPool jedisPool = new JedisPool(poolConfig, redis.getHost(), redis.getMappedPort(6379));
+        jedisPool = new JedisPool(poolConfig, redis.getHost(), redis.getMappedPort(6379));
 
         polydata = new PolydataRedis(
                 PolydataRedis.PolydataRedisConfig.builder()
                         .pool(jedisPool)
+                        .prefix("test-")
                         .polyPacker(new NoOpPolyPacker())
                         .build()
         );
@@ -62,4 +84,245 @@ public class PolydataRedisTest {
         assertTrue(list.hasPoly(polyId));
     }
 
+    @Test
+    public void migrateToSortedSets() {
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("poly-" + i))
+                    .indexToPersist(Set.of("_date", "tag-" + (i % 2)))
+                    .build());
+        }
+        polydata.insert(polyId, requests.subList(0, 5));
+        polydata.insert(polyId, requests.subList(5, 10));
+        List<String> listOrder = ids(polydata.query(polyId, BasicPolyQuery.builder().build()));
+
+        assertEquals(3, polydata.migrateToSortedSets(polyId));
+        assertEquals(0, polydata.migrateToSortedSets(polyId));
+
+        PolydataRedis sortedSets = new PolydataRedis(PolydataRedis.PolydataRedisConfig.builder()
+                .pool(jedisPool)
+                .prefix("test-")
+                .polyPacker(new NoOpPolyPacker())
+                .indexMode(RedisIndexMode.SORTED_SET)
+                .build());
+        assertEquals(listOrder, ids(sortedSets.query(polyId, BasicPolyQuery.builder().build())));
+        BasicPolyQuery tagQuery = new BasicPolyQuery();
+        tagQuery.index("tag-1");
+        assertEquals(5L, sortedSets.count(polyId, tagQuery));
+        BasicPolyQuery randomQuery = new BasicPolyQuery();
+        randomQuery.queryType(BasicPolyQuery.QueryFunction.RANDOM);
+        randomQuery.withOption(PolydataRedis.RANDOM_COUNT, 20);
+        assertEquals(10, sortedSets.query(polyId, randomQuery).list().size());
+
+        // update moves poly to the head of index without duplicates
+        sortedSets.update(polyId, List.of(requests.get(0)));
+        assertEquals("poly-0", ids(sortedSets.query(polyId, BasicPolyQuery.builder().build())).get(0));
+        assertEquals(10L, sortedSets.count(polyId, BasicPolyQuery.builder().build()));
+    }
+
+    @Test
+    public void tagCountsFollowConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            int offset = writer;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    polydata.insert(polyId, List.of(InsertRequest.builder()
+                            .data(BasicPoly.newPoly("poly-" + (i % 10)).with("writer", offset))
+                            .indexToPersist(Set.of("_date", "tag-" + ((i + offset) % 3)))
+                            .build()));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        polydata.remove(polyId, Set.of("poly-0", "poly-1"));
+
+        BasicPoly index = polydata.index(polyId).orElseThrow();
+        assertEquals(8L, tagCount(index, "_date"));
+        long tagged = 0;
+        for (String tag : List.of("tag-0", "tag-1", "tag-2")) {
+            BasicPolyQuery query = new BasicPolyQuery();
+            query.index(tag);
+            assertEquals(polydata.count(polyId, query), tagCount(index, tag));
+            tagged += tagCount(index, tag);
+        }
+        assertEquals(8L, tagged);
+    }
+
+    @Test
+    public void recalculateIndexAfterSkippedCounts() {
+        polydata.insert(polyId, InsertOptions.builder().skipIndex(true).build(), List.of(InsertRequest.builder()
+                .data(BasicPoly.newPoly("poly-1"))
+                .indexToPersist(Set.of("_date", "tag-x"))
+                .build()));
+        assertEquals(0L, tagCount(polydata.index(polyId).orElseThrow(), "tag-x"));
+
+        polydata.recalculateIndex(polyId);
+        assertEquals(1L, tagCount(polydata.index(polyId).orElseThrow(), "tag-x"));
+        assertEquals(1L, tagCount(polydata.index(polyId).orElseThrow(), "_date"));
+    }
+
+    @Test
+    public void cursorPagesSkipMissingPolys() {
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("poly-" + i))
+                    .indexToPersist(Set.of("_date"))
+                    .build());
+        }
+        polydata.insert(polyId, requests);
+        // index entry left without poly
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.del("test-" + polyId + "-poly-3");
+        }
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.queryType(BasicPolyQuery.QueryFunction.CURSOR);
+        query.withOption(PolydataRedis.ITEM_PER_PAGE, 2);
+        BasicPolyList first = polydata.query(polyId, query);
+        assertEquals(List.of("poly-4"), ids(first));
+
+        query.cursor((String) first.getMetadata().get(BasicPolyQuery.NEXT_CURSOR));
+        assertEquals(List.of("poly-2", "poly-1"), ids(polydata.query(polyId, query)));
+    }
+
+    @Test
+    public void sortedSetCursorPagesAfterBatchInsert() {
+        PolydataRedis sortedSets = new PolydataRedis(PolydataRedis.PolydataRedisConfig.builder()
+                .pool(jedisPool)
+                .prefix("test-")
+                .polyPacker(new NoOpPolyPacker())
+                .indexMode(RedisIndexMode.SORTED_SET)
+                .build());
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("poly-" + i))
+                    .indexToPersist(Set.of("_date"))
+                    .build());
+        }
+        sortedSets.insert(polyId, requests);
+
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.queryType(BasicPolyQuery.QueryFunction.CURSOR);
+        query.withOption(PolydataRedis.ITEM_PER_PAGE, 3);
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            if (cursor != null) {
+                query.cursor(cursor);
+            }
+            BasicPolyList page = sortedSets.query(polyId, query);
+            List<String> ids = ids(page);
+            paged.addAll(ids);
+            cursor = (String) page.getMetadata().get(BasicPolyQuery.NEXT_CURSOR);
+            if (cursor != null) {
+                // page continues by score of removed cursor poly
+                sortedSets.remove(polyId, Set.of(ids.get(ids.size() - 1)));
+            }
+        } while (cursor != null);
+
+        assertEquals(20, paged.size());
+        assertEquals(20, new HashSet<>(paged).size());
+        assertEquals("poly-19", paged.get(0));
+        assertEquals("poly-0", paged.get(19));
+    }
+
+    @Test
+    public void streamIncludesPolysWithoutDateTag() {
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            requests.add(InsertRequest.builder()
+                    .data(BasicPoly.newPoly("poly-" + i))
+                    .indexToPersist(i % 2 == 0 ? Set.of("_date") : Set.of("tag-" + (i % 3)))
+                    .build());
+        }
+        requests.add(InsertRequest.builder()
+                .data(BasicPoly.newPoly("untagged"))
+                .indexToPersist(Set.of())
+                .build());
+        polydata.insert(polyId, requests);
+        polydata.remove(polyId, Set.of("poly-0", "poly-1"));
+
+        Set<String> streamed = new HashSet<>();
+        try (Stream<BasicPoly> polys = polydata.stream(polyId, 4)) {
+            polys.forEach(poly -> streamed.add(poly._id()));
+        }
+        assertEquals(24, streamed.size());
+        assertTrue(streamed.contains("untagged"));
+        assertTrue(streamed.contains("poly-3"));
+        assertFalse(streamed.contains("poly-1"));
+    }
+
+    @Test
+    public void datasetPackerWritesWithDictionary() throws IOException {
+        List<BasicPoly> samples = new ArrayList<>();
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            BasicPoly poly = BasicPoly.newPoly("poly-" + i).with("title", "Title of poly " + i);
+            samples.add(poly);
+            if (i < 10) {
+                requests.add(InsertRequest.builder().data(poly).indexToPersist(Set.of("_date")).build());
+            }
+        }
+        PolyPackerRegistry registry = PolyPackerRegistry.defaultRegistry();
+        PolydataRedis dictionaryRedis = new PolydataRedis(PolydataRedis.PolydataRedisConfig.builder()
+                .pool(jedisPool)
+                .prefix("test-")
+                .polyPacker(registry.headerPacker("json"))
+                .datasetPackers(Map.of(polyId, registry.zstdPacker(ZstdPolyPacker.trainDictionary(samples, 4 * 1024))))
+                .build());
+        dictionaryRedis.insert(polyId, requests);
+        assertEquals("Title of poly 3", dictionaryRedis.read(polyId, Set.of("poly-3")).list().get(0).fetch("title"));
+        assertTrue(dictionaryRedis.config(polyId).isPresent());
+
+        // registry without the dictionary can't read polys of dataset, unreadable polys are skipped
+        PolydataRedis plainRedis = new PolydataRedis(PolydataRedis.PolydataRedisConfig.builder()
+                .pool(jedisPool)
+                .prefix("test-")
+                .polyPacker(PolyPackerRegistry.defaultRegistry().headerPacker("json"))
+                .build());
+        assertTrue(plainRedis.read(polyId, Set.of("poly-3")).list().isEmpty());
+    }
+
+    private static long tagCount(BasicPoly index, String tag) {
+        BasicPoly count = index.fetch(tag);
+        return count == null ? 0L : ((Number) count.fetch("count")).longValue();
+    }
+
+    private static List<String> ids(BasicPolyList list) {
+        List<String> ids = new ArrayList<>();
+        list.list().forEach(poly -> ids.add(poly._id()));
+        return ids;
+    }
+
+    @Test
+    public void lettuceReadsMatchBlockingStorage() throws IOException {
+        polydata.insert(polyId, List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("poly-1").with("value", 1)).indexToPersist(Set.of("tag")).build(),
+                InsertRequest.builder().data(BasicPoly.newPoly("poly-2").with("value", 2)).indexToPersist(Set.of("tag")).build()));
+        RedisClient client = RedisClient.create(RedisURI.create(redis.getHost(), redis.getMappedPort(6379)));
+        StatefulRedisConnection<byte[], byte[]> connection = client.connect(ByteArrayCodec.INSTANCE);
+        try (LettuceAsyncPolydata async = new LettuceAsyncPolydata(polydata, connection.async(), () -> {
+            connection.close();
+            client.shutdown();
+        }, Executors.newSingleThreadExecutor(), true)) {
+            assertTrue(async.exists(polyId).join());
+            assertFalse(async.exists("missing").join());
+            assertEquals(polydata.config(polyId).get().data(), async.config(polyId).join().get().data());
+            assertTrue(async.metadata(polyId).join().isPresent());
+            assertEquals(2L, async.indexData(polyId, "tag").join().get().fetch("count", 0L));
+
+            BasicPolyList polys = async.read(polyId, Set.of("poly-1", "poly-2", "poly-3")).join();
+            assertEquals(2, polys.list().size());
+            assertEquals(Set.of("poly-1", "poly-2"), new HashSet<>(List.of(polys.list().get(0)._id(), polys.list().get(1)._id())));
+            assertTrue(async.list().join().hasPoly(polyId));
+        }
+    }
+
 }
@@ -2,8 +2,12 @@ package com.unidev.polydata4.sqlite;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.unidev.polydata4.api.AbstractPolydata;
+import com.unidev.polydata4.api.NearCache;
+import com.unidev.polydata4.api.QueryCursor;
 import com.unidev.polydata4.domain.*;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -14,12 +18,14 @@ import org.sqlite.SQLiteDataSource;
 import javax.cache.Cache;
 import java.io.File;
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Polydata storage backed by SQLite databases.
@@ -30,7 +36,14 @@ public class PolydataSqlite extends AbstractPolydata {
 
     private static final String DB_FILE_EXTENSION = ".db.sqlite";
 
-    private static final String INDEX_KEY = "index";
+    private static final String INSERT_TAG_SQL = "INSERT OR IGNORE INTO data_tag(tag, update_date, _id_n) VALUES(?, ?, ?)";
+
+    private static final String DELETE_TAGS_SQL = "DELETE FROM data_tag WHERE _id_n=?";
+
+    /**
+     * Fixed sizes of IN-lists, keeps number of cached statements bounded.
+     */
+    static final int[] IN_LIST_SIZES = {1, 8, 32, 128, 512};
 
     static {
         try {
@@ -40,11 +53,27 @@ public class PolydataSqlite extends AbstractPolydata {
         }
     }
 
+    public static final int DEFAULT_READ_CONNECTIONS = 4;
+
     private final File rootDir;
     private final ObjectMapper objectMapper;
     private final Map<String, SQLiteDataSource> datasourcesMap = new ConcurrentHashMap<>();
 
-    private final Map<String, Connection> connectionMap = new ConcurrentHashMap<>();
+    private final Map<String, SqliteConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    /**
+     * Number of read only connections per dataset.
+     */
+    @Getter
+    @Setter
+    private int readConnections = DEFAULT_READ_CONNECTIONS;
+
+    /**
+     * Pragmas applied to connections of each dataset, see {@link SqliteTuning#preset(String)}.
+     */
+    @Getter
+    @Setter
+    private SqliteTuning tuning = SqliteTuning.DEFAULT;
 
     private static Set<String> buildTagIndex(InsertRequest request) {
         Set<String> indexToPersist = request.getIndexToPersist();
@@ -63,21 +92,12 @@ public class PolydataSqlite extends AbstractPolydata {
 
     @Override
     public BasicPoly create(String dataset) {
-        SQLiteDataSource datasource = fetchDataSource(dataset);
-        try {
-            Flyway flyway = Flyway.configure()
-                    .dataSource(datasource.getUrl(), "", "")
-                    .locations("polydata-sqlite")
-                    .outOfOrder(true)
-                    .load();
-            flyway.migrate();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        migrate(dataset);
 
         BasicPoly config = new BasicPoly();
         config._id(CONFIG_KEY);
         config.put(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
+        nearCache.invalidate(dataset);
         config(dataset, config);
         metadata(dataset, BasicPoly.newPoly(METADATA_KEY));
 
@@ -87,58 +107,57 @@ public class PolydataSqlite extends AbstractPolydata {
 
     @Override
     public boolean exists(String dataset) {
-        return getDbFile(dataset).exists();
+        return cachedExists(dataset, () -> getDbFile(dataset).exists());
     }
 
     @Override
     public Optional<BasicPoly> config(String dataset) {
-        return readInternal(dataset, CONFIG_KEY);
+        return cachedConfig(dataset, () -> readInternal(dataset, CONFIG_KEY));
     }
 
     @Override
     public void config(String dataset, BasicPoly config) {
         persistInternal(dataset, config);
+        nearCache.invalidate(NearCache.Kind.CONFIG, dataset);
     }
 
     @Override
     public Optional<BasicPoly> metadata(String dataset) {
-        return readInternal(dataset, METADATA_KEY);
+        return cachedMetadata(dataset, () -> readInternal(dataset, METADATA_KEY));
     }
 
     @Override
     public void metadata(String dataset, BasicPoly metadata) {
         persistInternal(dataset, metadata);
+        nearCache.invalidate(NearCache.Kind.METADATA, dataset);
     }
 
     @Override
     public Optional<BasicPoly> index(String dataset) {
-        Optional<BasicPoly> index = readInternal(dataset, INDEX_KEY);
-        if (index.isEmpty()) {
-            return index;
-        }
-        BasicPoly internalIndex = index.get();
-        BasicPoly result = new BasicPoly();
-
-        Map<String, Object> data = internalIndex.data();
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            if (!(entry.getValue() instanceof Map)) {
-                continue;
-            }
-            Map<String, Object> value = (Map<String, Object>) entry.getValue();
-            if (value.containsKey("data")) {
-                value = (Map<String, Object>) value.get("data");
+        return reader(dataset, connection -> {
+            BasicPoly result = new BasicPoly();
+            try (ResultSet resultSet = connection.prepare("SELECT tag, count FROM tag_count").executeQuery()) {
+                while (resultSet.next()) {
+                    String tag = resultSet.getString("tag");
+                    result.put(tag, BasicPoly.newPoly(tag).with(COUNT, resultSet.getLong("count")));
+                }
             }
-            BasicPoly poly = new BasicPoly();
-            poly.data().putAll(value);
-            result.put(entry.getKey(), poly);
-        }
-        return Optional.of(result);
+            return Optional.of(result);
+        });
     }
 
     @Override
     public Optional<BasicPoly> indexData(String dataset, String indexId) {
-        Optional<BasicPoly> index = index(dataset);
-        return index.map(basicPoly -> basicPoly.fetch(indexId));
+        return reader(dataset, connection -> {
+            PreparedStatement preparedStatement = connection.prepare("SELECT count FROM tag_count WHERE tag=?");
+            preparedStatement.setString(1, indexId);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    return Optional.of(BasicPoly.newPoly(indexId).with(COUNT, resultSet.getLong("count")));
+                }
+            }
+            return Optional.empty();
+        });
     }
 
     @Override
@@ -162,12 +181,13 @@ public class PolydataSqlite extends AbstractPolydata {
         });
 
         Set<Long> genHashIds = new HashSet<>();
+        List<Long> batchIds = new ArrayList<>();
+        List<Long> batchDates = new ArrayList<>();
+        List<Set<String>> batchTags = new ArrayList<>();
 
-        Connection connection = fetchConnection(dataset);
-        try {
-            connection.setAutoCommit(false);
+        writer(dataset, connection -> {
             PreparedStatement preparedStatement = connection
-                    .prepareStatement(
+                    .prepare(
                             "INSERT INTO data(_id_n, _id, data, polydata_index, create_date, update_date) VALUES(?, ?, ?, ?, ?, ?) ON CONFLICT (_id_n) DO NOTHING;");
 
             for (InsertRequest request : toInsert) {
@@ -200,6 +220,9 @@ public class PolydataSqlite extends AbstractPolydata {
                     preparedStatement.setLong(5, createDate);
                     preparedStatement.setLong(6, updateDate);
                     preparedStatement.addBatch();
+                    batchIds.add(id_n);
+                    batchDates.add(updateDate);
+                    batchTags.add(tags);
 
                     result.add(request.getData());
 
@@ -209,14 +232,28 @@ public class PolydataSqlite extends AbstractPolydata {
                 }
             }
 
-            preparedStatement.executeBatch();
-            connection.commit();
-            connection.setAutoCommit(true);
-            preparedStatement.close();
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+            int[] inserted = preparedStatement.executeBatch();
+            PreparedStatement tagStatement = connection.prepare(INSERT_TAG_SQL);
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i] == 0) {
+                    continue;
+                }
+                addTagRows(tagStatement, batchIds.get(i), batchDates.get(i), batchTags.get(i));
+            }
+            tagStatement.executeBatch();
+            if (!insertOptions.isSkipIndex()) {
+                Map<String, Long> tagDelta = new HashMap<>();
+                for (int i = 0; i < inserted.length; i++) {
+                    // rows skipped by ON CONFLICT are not counted
+                    if (inserted[i] == 0) {
+                        continue;
+                    }
+                    batchTags.get(i).forEach(tag -> tagDelta.merge(tag, 1L, Long::sum));
+                }
+                applyTagDelta(connection, tagDelta);
+            }
+            return inserted.length;
+        });
 
         log.info("Added polys {} ", toInsert.size());
 
@@ -224,7 +261,6 @@ public class PolydataSqlite extends AbstractPolydata {
             return result;
         }
 
-        recalculateIndex(dataset);
         if (!toUpdate.isEmpty()) {
             update(dataset, toUpdate);
         }
@@ -240,11 +276,16 @@ public class PolydataSqlite extends AbstractPolydata {
     @Override
     public BasicPolyList update(String dataset, Collection<InsertRequest> updateRequests) {
         BasicPolyList result = new BasicPolyList();
-        Connection connection = fetchConnection(dataset);
-        try {
-            connection.setAutoCommit(false);
+        writer(dataset, connection -> {
+            Set<Long> idsN = new HashSet<>();
+            updateRequests.forEach(request -> idsN.add(genHash(request.getData()._id())));
+            Map<Long, Set<String>> previousTags = fetchTags(connection, idsN);
+
+            List<Long> batchIds = new ArrayList<>();
+            List<Long> batchDates = new ArrayList<>();
+            List<Set<String>> batchTags = new ArrayList<>();
             PreparedStatement preparedStatement = connection
-                    .prepareStatement("UPDATE data SET data=?, polydata_index=?, update_date=? WHERE _id_n=?");
+                    .prepare("UPDATE data SET data=?, polydata_index=?, update_date=? WHERE _id_n=?");
             for (InsertRequest request : updateRequests) {
                 Set<String> tags = buildTagIndex(request);
                 String tagString = buildTagIndexString(tags);
@@ -253,24 +294,62 @@ public class PolydataSqlite extends AbstractPolydata {
                 String id = data._id();
                 long id_n = genHash(id);
                 String jsonData = objectMapper.writeValueAsString(data);
+                long updateDate = System.currentTimeMillis();
                 preparedStatement.setString(1, jsonData);
                 preparedStatement.setString(2, tagString);
-                preparedStatement.setLong(3, System.currentTimeMillis());
+                preparedStatement.setLong(3, updateDate);
                 preparedStatement.setLong(4, id_n);
                 preparedStatement.addBatch();
+                batchIds.add(id_n);
+                batchDates.add(updateDate);
+                batchTags.add(tags);
 
                 result.add(data);
             }
-            preparedStatement.executeBatch();
-            connection.commit();
-            connection.setAutoCommit(true);
-            preparedStatement.close();
-        } catch (Exception e) {
-            log.error("Failed to persist poly", e);
-            throw new RuntimeException(e);
-        }
+            int[] updated = preparedStatement.executeBatch();
 
-        recalculateIndex(dataset);
+            Map<String, Long> tagDelta = new HashMap<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    continue;
+                }
+                Set<String> oldTags = previousTags.getOrDefault(batchIds.get(i), Collections.emptySet());
+                Set<String> newTags = batchTags.get(i);
+                for (String tag : newTags) {
+                    if (!oldTags.contains(tag)) {
+                        tagDelta.merge(tag, 1L, Long::sum);
+                    }
+                }
+                for (String tag : oldTags) {
+                    if (!newTags.contains(tag)) {
+                        tagDelta.merge(tag, -1L, Long::sum);
+                    }
+                }
+                // same id can be updated twice in one batch
+                previousTags.put(batchIds.get(i), newTags);
+            }
+            applyTagDelta(connection, tagDelta);
+
+            // only the last update of each row defines its tag rows
+            Map<Long, Integer> lastUpdate = new HashMap<>();
+            for (int i = 0; i < updated.length; i++) {
+                lastUpdate.put(batchIds.get(i), i);
+            }
+            PreparedStatement deleteStatement = connection.prepare(DELETE_TAGS_SQL);
+            PreparedStatement tagStatement = connection.prepare(INSERT_TAG_SQL);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0 || lastUpdate.get(batchIds.get(i)) != i) {
+                    continue;
+                }
+                deleteStatement.setLong(1, batchIds.get(i));
+                deleteStatement.addBatch();
+                addTagRows(tagStatement, batchIds.get(i), batchDates.get(i), batchTags.get(i));
+            }
+            deleteStatement.executeBatch();
+            tagStatement.executeBatch();
+
+            return updated.length;
+        });
 
         log.info("Updated polys {} ", updateRequests.size());
         return result;
@@ -297,26 +376,21 @@ public class PolydataSqlite extends AbstractPolydata {
                 idsToQuery.remove(item._id());
             }
         }
+        if (idsToQuery.isEmpty()) {
+            return basicPolyList;
+        }
         final BasicPolyList dbPolys = new BasicPolyList();
 
-        Connection connection = fetchConnection(dataset);
-        try {
-            String q = createQuestionMarks(ids);
-            PreparedStatement preparedStatement = connection
-                    .prepareStatement("SELECT data FROM data WHERE _id_n IN ( " + q + ") ; ");
-            int i = 1;
-            for (String id : idsToQuery) {
-                preparedStatement.setLong(i++, genHash(id));
-            }
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
+        reader(dataset, connection -> {
+            Set<Long> idsN = new HashSet<>();
+            idsToQuery.forEach(id -> idsN.add(genHash(id)));
+            queryByIds(connection, "SELECT data FROM data WHERE _id_n IN (%s)", idsN, resultSet -> {
                 String rawData = resultSet.getString("data");
                 BasicPoly basicPoly = objectMapper.readValue(rawData, BasicPoly.class);
                 dbPolys.add(basicPoly);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+            });
+            return dbPolys;
+        });
         if (cache.isPresent()) {
             Cache cacheInstance = cache.get();
             Map<String, BasicPoly> cacheMap = new HashMap<>();
@@ -333,21 +407,32 @@ public class PolydataSqlite extends AbstractPolydata {
     @Override
     public BasicPolyList remove(String dataset, Set<String> ids) {
         BasicPolyList basicPolyList = read(dataset, ids);
-        Connection connection = fetchConnection(dataset);
-        try {
-            String q = createQuestionMarks(ids);
-            PreparedStatement preparedStatement = connection
-                    .prepareStatement("DELETE FROM data WHERE _id_n IN (" + q + ") ; ");
-            int i = 1;
-            for (String id : ids) {
-                preparedStatement.setLong(i++, genHash(id));
+        if (ids.isEmpty()) {
+            return basicPolyList;
+        }
+        writer(dataset, connection -> {
+            Set<Long> idsN = new HashSet<>();
+            ids.forEach(id -> idsN.add(genHash(id)));
+            Map<Long, Set<String>> previousTags = fetchTags(connection, idsN);
+
+            PreparedStatement preparedStatement = connection.prepare("DELETE FROM data WHERE _id_n=?");
+            PreparedStatement deleteStatement = connection.prepare(DELETE_TAGS_SQL);
+            for (Long id_n : idsN) {
+                preparedStatement.setLong(1, id_n);
+                preparedStatement.addBatch();
+                deleteStatement.setLong(1, id_n);
+                deleteStatement.addBatch();
             }
-            long removedRows = preparedStatement.executeUpdate();
+            long removedRows = Arrays.stream(preparedStatement.executeBatch()).sum();
+            deleteStatement.executeBatch();
+
+            Map<String, Long> tagDelta = new HashMap<>();
+            previousTags.values().forEach(tags -> tags.forEach(tag -> tagDelta.merge(tag, -1L, Long::sum)));
+            applyTagDelta(connection, tagDelta);
+
             log.info("Removed {} rows", removedRows);
-            recalculateIndex(dataset);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+            return removedRows;
+        });
         return basicPolyList;
     }
 
@@ -371,27 +456,56 @@ public class PolydataSqlite extends AbstractPolydata {
         final int page = query.page() < 0 ? 0 : query.page();
         Integer defaultItemPerPage = config.fetch(ITEM_PER_PAGE, DEFAULT_ITEM_PER_PAGE);
         Integer itemPerPage = query.getOptions().fetch(ITEM_PER_PAGE, defaultItemPerPage);
-        Connection connection = fetchConnection(dataset);
-        try {
-            PreparedStatement preparedStatement = null;
+        final String tagIndex = index;
+        return reader(dataset, connection -> {
+            PreparedStatement preparedStatement;
             if (query.queryType() == BasicPolyQuery.QueryFunction.RANDOM) {
                 int randomCount = query.option(RANDOM_COUNT, itemPerPage);
-                preparedStatement = connection.prepareStatement("SELECT data FROM data WHERE polydata_index LIKE ? ORDER BY RANDOM() LIMIT " + randomCount + " ; ");
+                // IN returns rows in rowid order, selected rows are shuffled again
+                preparedStatement = connection.prepare("SELECT data FROM data WHERE _id_n IN (SELECT _id_n FROM data_tag WHERE tag = ? ORDER BY RANDOM() LIMIT ?) ORDER BY RANDOM() ; ");
+                preparedStatement.setString(1, tagIndex);
+                preparedStatement.setInt(2, randomCount);
+            } else if (query.queryType() == BasicPolyQuery.QueryFunction.CURSOR) {
+                Optional<QueryCursor> cursor = QueryCursor.decode(query.cursor());
+                if (cursor.isPresent()) {
+                    // seek after last returned row in (update_date DESC, _id_n) order
+                    preparedStatement = connection.prepare("SELECT data.data, data_tag.update_date, data_tag._id_n FROM data_tag JOIN data ON data._id_n = data_tag._id_n WHERE data_tag.tag = ? AND data_tag.update_date <= ? AND (data_tag.update_date < ? OR data_tag._id_n > ?) ORDER BY data_tag.update_date DESC, data_tag._id_n LIMIT ? ; ");
+                    preparedStatement.setString(1, tagIndex);
+                    preparedStatement.setLong(2, cursor.get().getValue());
+                    preparedStatement.setLong(3, cursor.get().getValue());
+                    preparedStatement.setLong(4, Long.parseLong(cursor.get().getId()));
+                    preparedStatement.setInt(5, itemPerPage);
+                } else {
+                    preparedStatement = connection.prepare("SELECT data.data, data_tag.update_date, data_tag._id_n FROM data_tag JOIN data ON data._id_n = data_tag._id_n WHERE data_tag.tag = ? ORDER BY data_tag.update_date DESC, data_tag._id_n LIMIT ? ; ");
+                    preparedStatement.setString(1, tagIndex);
+                    preparedStatement.setInt(2, itemPerPage);
+                }
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    QueryCursor last = null;
+                    while (resultSet.next()) {
+                        list.add(objectMapper.readValue(resultSet.getString("data"), BasicPoly.class));
+                        last = new QueryCursor(resultSet.getLong("update_date"), resultSet.getLong("_id_n") + "");
+                    }
+                    if (last != null && list.list().size() == itemPerPage) {
+                        list.getMetadata().put(BasicPolyQuery.NEXT_CURSOR, last.encode());
+                    }
+                }
+                return list;
             } else {
-                preparedStatement = connection.prepareStatement("SELECT data FROM data WHERE polydata_index LIKE ? ORDER BY update_date DESC LIMIT " + (page * itemPerPage) + "," + itemPerPage + " ; ");
+                preparedStatement = connection.prepare("SELECT data.data FROM data_tag JOIN data ON data._id_n = data_tag._id_n WHERE data_tag.tag = ? ORDER BY data_tag.update_date DESC LIMIT ?, ? ; ");
+                preparedStatement.setString(1, tagIndex);
+                preparedStatement.setInt(2, page * itemPerPage);
+                preparedStatement.setInt(3, itemPerPage);
             }
-            preparedStatement.setString(1, "%|" + index + "|%");
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
-                String rawData = resultSet.getString("data");
-                BasicPoly basicPoly = objectMapper.readValue(rawData, BasicPoly.class);
-                list.add(basicPoly);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    String rawData = resultSet.getString("data");
+                    BasicPoly basicPoly = objectMapper.readValue(rawData, BasicPoly.class);
+                    list.add(basicPoly);
+                }
             }
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        return list;
+            return list;
+        });
     }
 
     @Override
@@ -406,20 +520,59 @@ public class PolydataSqlite extends AbstractPolydata {
         if (!StringUtils.isBlank(tag)) {
             index = tag;
         }
-        Connection connection = fetchConnection(dataset);
-        try {
-            PreparedStatement preparedStatement = null;
-            preparedStatement = connection.prepareStatement("SELECT count(data) FROM data WHERE polydata_index LIKE ? ; ");
-            preparedStatement.setString(1, "%|" + index + "|%");
-            ResultSet resultSet = preparedStatement.executeQuery();
+        final String tagIndex = index;
+        return reader(dataset, connection -> {
+            PreparedStatement preparedStatement = connection.prepare("SELECT count(*) FROM data_tag WHERE tag = ? ; ");
+            preparedStatement.setString(1, tagIndex);
             long count = 0;
-            if (resultSet.next()) {
-                count = resultSet.getLong(1);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    count = resultSet.getLong(1);
+                }
             }
             return count;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        });
+    }
+
+    /**
+     * Stream polys from forward only result set, statement is not cached since it stays open until stream is closed.
+     */
+    @Override
+    public Stream<BasicPoly> stream(String dataset, int fetchSize) {
+        return fetchConnectionPool(dataset).stream(connection -> {
+            PreparedStatement preparedStatement = connection.getConnection()
+                    .prepareStatement("SELECT data FROM data", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ResultSet resultSet;
+            try {
+                preparedStatement.setFetchSize(fetchSize);
+                resultSet = preparedStatement.executeQuery();
+            } catch (SQLException e) {
+                preparedStatement.close();
+                throw e;
+            }
+            Spliterator<BasicPoly> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super BasicPoly> action) {
+                    try {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                        action.accept(objectMapper.readValue(resultSet.getString("data"), BasicPoly.class));
+                        return true;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    resultSet.close();
+                    preparedStatement.close();
+                } catch (SQLException e) {
+                    log.warn("Failed to close stream of {}", dataset, e);
+                }
+            });
+        });
     }
 
     @Override
@@ -442,74 +595,145 @@ public class PolydataSqlite extends AbstractPolydata {
         BasicPolyList list = list();
         list.list().forEach(poly -> {
             String name = poly._id();
-            fetchConnection(name);
+            fetchConnectionPool(name);
         });
     }
 
     @Override
     public void close() throws IOException {
-        connectionMap.values().forEach(connection -> {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        connectionPools.values().forEach(SqliteConnectionPool::close);
+        connectionPools.clear();
+    }
+
+    /**
+     * Rebuild tag counts from tag rows, used after inserts with {@link InsertOptions#isSkipIndex()}.
+     */
+    public void recalculateIndex(String dataset) {
+        writer(dataset, connection -> {
+            connection.prepare("DELETE FROM tag_count").executeUpdate();
+            return connection.prepare("INSERT INTO tag_count(tag, count) SELECT tag, count(*) FROM data_tag GROUP BY tag").executeUpdate();
         });
     }
 
-    private void recalculateIndex(String dataset) {
-        BasicPoly index = BasicPoly.newPoly(INDEX_KEY);
-        Connection connection = fetchConnection(dataset);
-        try {
-            PreparedStatement preparedStatement = connection
-                    .prepareStatement("SELECT polydata_index FROM data");
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
-                String indexString = resultSet.getString("polydata_index");
-                String[] split = indexString.split("\\|");
-                for (String s : split) {
-                    if (s != null && !s.isEmpty()) {
-                        BasicPoly data = index.fetch(s, BasicPoly.newPoly(s));
-                        int count = data.fetch(COUNT, 0) + 1;
-                        data.put(COUNT, count);
-                        index.put(s, data);
-                    }
+    /**
+     * Switch dataset writer to {@link SqliteTuning#BULK_LOAD} pragmas, writes are not synced to disk until {@link #finishBulkLoad(String)}.
+     */
+    public void startBulkLoad(String dataset) {
+        fetchConnectionPool(dataset).tuneWriter(SqliteTuning.BULK_LOAD);
+    }
+
+    /**
+     * Restore configured pragmas of dataset writer and checkpoint WAL written during bulk load.
+     */
+    public void finishBulkLoad(String dataset) {
+        fetchConnectionPool(dataset).restoreWriter();
+    }
+
+    /**
+     * Read current tags of rows by _id_n.
+     */
+    private Map<Long, Set<String>> fetchTags(PooledConnection connection, Set<Long> idsN) throws Exception {
+        Map<Long, Set<String>> tags = new HashMap<>();
+        queryByIds(connection, "SELECT _id_n, polydata_index FROM data WHERE _id_n IN (%s)", idsN, resultSet ->
+                tags.put(resultSet.getLong("_id_n"), parseTagIndexString(resultSet.getString("polydata_index"))));
+        return tags;
+    }
+
+    /**
+     * Run query with IN-list of ids, ids are split into chunks and each chunk is padded to the nearest size from {@link #IN_LIST_SIZES}
+     * by repeating its last id, so only a few distinct statements are prepared.
+     */
+    private void queryByIds(PooledConnection connection, String sqlTemplate, Collection<Long> idsN, RowHandler rowHandler) throws Exception {
+        List<Long> ids = new ArrayList<>(idsN);
+        int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int from = 0; from < ids.size(); from += maxSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + maxSize, ids.size()));
+            int size = inListSize(chunk.size());
+            PreparedStatement preparedStatement = connection.prepare(String.format(sqlTemplate, createQuestionMarks(size)));
+            for (int i = 0; i < size; i++) {
+                preparedStatement.setLong(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    rowHandler.handle(resultSet);
                 }
+            }
+        }
+    }
 
+    static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
-        persistInternal(dataset, index);
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    /**
+     * Add tag rows of one data row to batch of {@link #INSERT_TAG_SQL}.
+     */
+    private void addTagRows(PreparedStatement tagStatement, long id_n, long updateDate, Set<String> tags) throws SQLException {
+        for (String tag : tags) {
+            tagStatement.setString(1, tag);
+            tagStatement.setLong(2, updateDate);
+            tagStatement.setLong(3, id_n);
+            tagStatement.addBatch();
+        }
+    }
+
+    /**
+     * Apply tag count changes in current transaction, tags which reach zero are dropped.
+     */
+    private void applyTagDelta(PooledConnection connection, Map<String, Long> tagDelta) throws SQLException {
+        if (tagDelta.isEmpty()) {
+            return;
+        }
+        PreparedStatement preparedStatement = connection
+                .prepare("INSERT INTO tag_count(tag, count) VALUES(?, ?) ON CONFLICT(tag) DO UPDATE SET count = count + excluded.count");
+        for (Map.Entry<String, Long> entry : tagDelta.entrySet()) {
+            if (entry.getValue() == 0) {
+                continue;
+            }
+            preparedStatement.setString(1, entry.getKey());
+            preparedStatement.setLong(2, entry.getValue());
+            preparedStatement.addBatch();
+        }
+        preparedStatement.executeBatch();
+        connection.prepare("DELETE FROM tag_count WHERE count <= 0").executeUpdate();
     }
 
     private void persistInternal(String dataset, BasicPoly data) {
-        Connection connection = fetchConnection(dataset);
         try {
-            PreparedStatement preparedStatement = connection
-                    .prepareStatement("INSERT OR REPLACE INTO internal(_id, data, create_date, update_date) VALUES(?,?,?,?);");
-            preparedStatement.setString(1, data._id());
-            preparedStatement.setString(2, objectMapper.writeValueAsString(data));
-            preparedStatement.setLong(3, System.currentTimeMillis());
-            preparedStatement.setLong(4, System.currentTimeMillis());
-            preparedStatement.executeUpdate();
+            writer(dataset, connection -> {
+                PreparedStatement preparedStatement = connection
+                        .prepare("INSERT OR REPLACE INTO internal(_id, data, create_date, update_date) VALUES(?,?,?,?);");
+                preparedStatement.setString(1, data._id());
+                preparedStatement.setString(2, objectMapper.writeValueAsString(data));
+                preparedStatement.setLong(3, System.currentTimeMillis());
+                preparedStatement.setLong(4, System.currentTimeMillis());
+                return preparedStatement.executeUpdate();
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     private Optional<BasicPoly> readInternal(String dataset, String id) {
-        Connection connection = fetchConnection(dataset);
         try {
-            PreparedStatement preparedStatement = connection
-                    .prepareStatement("SELECT data FROM internal WHERE _id=?");
-            preparedStatement.setString(1, id);
-
-            ResultSet resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                String rawData = resultSet.getString("data");
-                return Optional.ofNullable(objectMapper.readValue(rawData, BasicPoly.class));
-            }
+            return reader(dataset, connection -> {
+                PreparedStatement preparedStatement = connection
+                        .prepare("SELECT data FROM internal WHERE _id=?");
+                preparedStatement.setString(1, id);
+
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (resultSet.next()) {
+                        String rawData = resultSet.getString("data");
+                        return Optional.ofNullable(objectMapper.readValue(rawData, BasicPoly.class));
+                    }
+                }
+                return Optional.<BasicPoly>empty();
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -530,19 +754,52 @@ public class PolydataSqlite extends AbstractPolydata {
         return dbFile;
     }
 
-    private Connection fetchConnection(String dataset) {
-        return connectionMap.computeIfAbsent(dataset, k -> {
-            try {
-                return fetchDataSource(dataset).getConnection();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+    /**
+     * Apply pending schema migrations to database of dataset.
+     */
+    private void migrate(String dataset) {
+        SQLiteDataSource datasource = fetchDataSource(dataset);
+        try {
+            Flyway flyway = Flyway.configure()
+                    .dataSource(datasource.getUrl(), "", "")
+                    .locations("polydata-sqlite")
+                    .outOfOrder(true)
+                    .load();
+            flyway.migrate();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Pool of dataset, existing pools are looked up without locking: computeIfAbsent holds a monitor while the pool opens
+     * its database, which would pin virtual threads waiting for it.
+     * Databases of older versions are migrated before the pool is opened.
+     */
+    private SqliteConnectionPool fetchConnectionPool(String dataset) {
+        SqliteConnectionPool pool = connectionPools.get(dataset);
+        if (pool != null) {
+            return pool;
+        }
+        return connectionPools.computeIfAbsent(dataset, k -> {
+            if (getDbFile(k).exists()) {
+                migrate(k);
             }
+            return new SqliteConnectionPool(fetchDataSource(k).getUrl(), readConnections, tuning);
         });
     }
 
-    private String createQuestionMarks(Set<String> ids) {
+    private <R> R reader(String dataset, SqliteConnectionPool.SqlCall<R> logic) {
+        return fetchConnectionPool(dataset).read(logic);
+    }
+
+    private <R> R writer(String dataset, SqliteConnectionPool.SqlCall<R> logic) {
+        return fetchConnectionPool(dataset).write(logic);
+    }
+
+    private String createQuestionMarks(int size) {
         String q = "";
-        for (int i = 0; i < ids.size(); i++) {
+        for (int i = 0; i < size; i++) {
             q += "?,";
         }
         q = q.substring(0, q.length() - 1);
@@ -557,6 +814,24 @@ public class PolydataSqlite extends AbstractPolydata {
         return tagString;
     }
 
+    private Set<String> parseTagIndexString(String tagString) {
+        Set<String> tags = new HashSet<>();
+        if (tagString == null) {
+            return tags;
+        }
+        for (String tag : tagString.split("\\|")) {
+            if (!tag.isEmpty()) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet resultSet) throws Exception;
+    }
+
     long genHash(String value) {
         return new HashCodeBuilder(17, 37)
                 .append(value)
@@ -0,0 +1,66 @@
+package com.unidev.polydata4.sqlite;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SQLite connection of {@link SqliteConnectionPool} with prepared statements cached by SQL text.
+ * Cached statements are owned by the connection and released in {@link #close()}, callers close only result sets.
+ * Used by one thread at a time, while the connection is borrowed from the pool.
+ */
+@Slf4j
+class PooledConnection implements Closeable {
+
+    @Getter
+    private final Connection connection;
+
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    PooledConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Fetch cached statement for SQL text or prepare new one, parameters and batch of cached statement are cleared.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+        return statement;
+    }
+
+    int cachedStatements() {
+        return statements.size();
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close statement", e);
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close connection", e);
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.unidev.polydata4.sqlite;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Connections of one SQLite database: single writer connection guarded by a lock and a bounded set of read only connections.
+ * With default WAL journal readers are not blocked by running write transactions.
+ */
+@Slf4j
+class SqliteConnectionPool implements Closeable {
+
+    private static final int BUSY_TIMEOUT_MS = 30_000;
+
+    @Getter
+    private final String url;
+
+    @Getter
+    private final int maxReaders;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final PooledConnection writer;
+
+    private final Semaphore readerPermits;
+    private final BlockingQueue<PooledConnection> idleReaders = new LinkedBlockingQueue<>();
+    private final SQLiteDataSource readerDataSource;
+    private final SqliteTuning tuning;
+
+    private volatile boolean closed = false;
+
+    SqliteConnectionPool(String url, int maxReaders, SqliteTuning tuning) {
+        this.url = url;
+        this.maxReaders = maxReaders;
+        this.tuning = tuning;
+        this.readerPermits = new Semaphore(maxReaders, true);
+
+        SQLiteConfig writerConfig = new SQLiteConfig();
+        writerConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+        SQLiteDataSource writerDataSource = new SQLiteDataSource(writerConfig);
+        writerDataSource.setUrl(url);
+        Connection connection = null;
+        try {
+            // writer is opened first, it creates database file and sets journal mode before any reader
+            connection = writerDataSource.getConnection();
+            tuning.applyWriter(connection);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new RuntimeException(e);
+        }
+        writer = new PooledConnection(connection);
+
+        SQLiteConfig readerConfig = new SQLiteConfig();
+        readerConfig.setReadOnly(true);
+        readerConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+        readerDataSource = new SQLiteDataSource(readerConfig);
+        readerDataSource.setUrl(url);
+    }
+
+    /**
+     * Execute logic on read only connection, waits while all readers are in use.
+     */
+    <R> R read(SqlCall<R> logic) {
+        PooledConnection connection = borrowReader();
+        try {
+            return logic.apply(connection);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            releaseReader(connection);
+        }
+    }
+
+    /**
+     * Open stream on read only connection, connection is returned to the pool when stream is closed.
+     */
+    <T> Stream<T> stream(SqlCall<Stream<T>> logic) {
+        PooledConnection connection = borrowReader();
+        try {
+            return logic.apply(connection).onClose(() -> releaseReader(connection));
+        } catch (Exception e) {
+            releaseReader(connection);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Execute logic in a transaction on writer connection, writes are serialized.
+     * Nested calls join the outer transaction.
+     */
+    <R> R write(SqlCall<R> logic) {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Connection pool " + url + " is closed");
+            }
+            if (writeLock.getHoldCount() > 1) {
+                return logic.apply(writer);
+            }
+            Connection connection = writer.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                R result = logic.apply(writer);
+                connection.commit();
+                return result;
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Apply pragmas of another tuning profile to writer connection, used to switch in and out of bulk load.
+     */
+    void tuneWriter(SqliteTuning writerTuning) {
+        // pragmas like synchronous can't be changed inside transaction, so they are applied outside of write()
+        outsideTransaction(connection -> {
+            writerTuning.applyWriter(connection.getConnection());
+            return null;
+        });
+    }
+
+    /**
+     * Apply pragmas of pool tuning profile back to writer and move WAL content into database file.
+     */
+    void restoreWriter() {
+        tuneWriter(tuning);
+        outsideTransaction(connection -> {
+            try (Statement statement = connection.getConnection().createStatement()) {
+                statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            return null;
+        });
+    }
+
+    private <R> R outsideTransaction(SqlCall<R> logic) {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Connection pool " + url + " is closed");
+            }
+            if (writeLock.getHoldCount() > 1) {
+                throw new IllegalStateException("Writer of " + url + " is in transaction");
+            }
+            return logic.apply(writer);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private PooledConnection borrowReader() {
+        try {
+            readerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (closed) {
+            readerPermits.release();
+            throw new IllegalStateException("Connection pool " + url + " is closed");
+        }
+        PooledConnection pooledConnection = idleReaders.poll();
+        if (pooledConnection != null) {
+            return pooledConnection;
+        }
+        Connection connection = null;
+        try {
+            connection = readerDataSource.getConnection();
+            tuning.applyReader(connection);
+            return new PooledConnection(connection);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            readerPermits.release();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void releaseReader(PooledConnection connection) {
+        if (closed) {
+            connection.close();
+        } else {
+            idleReaders.offer(connection);
+        }
+        readerPermits.release();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idleReaders.poll()) != null) {
+            connection.close();
+        }
+        writeLock.lock();
+        try {
+            writer.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close connection {}", url, e);
+        }
+    }
+
+    /**
+     * Logic executed on pooled connection.
+     */
+    @FunctionalInterface
+    interface SqlCall<R> {
+        R apply(PooledConnection connection) throws Exception;
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.unidev.polydata4.sqlite;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Pragmas applied to connections of each SQLite dataset.
+ */
+@Getter
+@ToString
+@Builder(toBuilder = true)
+public class SqliteTuning {
+
+    /**
+     * WAL journal with full sync, SQLite defaults for the rest.
+     */
+    public static final SqliteTuning DEFAULT = SqliteTuning.builder().build();
+
+    /**
+     * Memory mapped reads, larger page cache and relaxed sync of WAL commits.
+     */
+    public static final SqliteTuning READ_HEAVY = SqliteTuning.builder()
+            .synchronous(SQLiteConfig.SynchronousMode.NORMAL)
+            .mmapSize(256L * 1024 * 1024)
+            .cacheSize(-64_000)
+            .tempStore(SQLiteConfig.TempStore.MEMORY)
+            .build();
+
+    /**
+     * No fsync at all, database may be corrupted by power loss or OS crash during the load.
+     */
+    public static final SqliteTuning BULK_LOAD = SqliteTuning.builder()
+            .synchronous(SQLiteConfig.SynchronousMode.OFF)
+            .cacheSize(-256_000)
+            .tempStore(SQLiteConfig.TempStore.MEMORY)
+            .build();
+
+    @Builder.Default
+    private final SQLiteConfig.JournalMode journalMode = SQLiteConfig.JournalMode.WAL;
+
+    @Builder.Default
+    private final SQLiteConfig.SynchronousMode synchronous = SQLiteConfig.SynchronousMode.FULL;
+
+    /**
+     * Bytes of database file mapped into memory, 0 disables mmap.
+     */
+    @Builder.Default
+    private final long mmapSize = 0;
+
+    /**
+     * Page cache size, positive value is number of pages, negative value is size in KiB.
+     */
+    @Builder.Default
+    private final int cacheSize = -2_000;
+
+    @Builder.Default
+    private final SQLiteConfig.TempStore tempStore = SQLiteConfig.TempStore.DEFAULT;
+
+    /**
+     * Page size, has effect only on new databases.
+     */
+    @Builder.Default
+    private final int pageSize = 4096;
+
+    /**
+     * Resolve preset by name: "default", "read-heavy" or "bulk-load".
+     */
+    public static SqliteTuning preset(String name) {
+        if (name == null) {
+            return DEFAULT;
+        }
+        switch (name.toLowerCase()) {
+            case "default":
+                return DEFAULT;
+            case "read-heavy":
+                return READ_HEAVY;
+            case "bulk-load":
+                return BULK_LOAD;
+            default:
+                throw new RuntimeException("Unknown SQLite tuning profile " + name);
+        }
+    }
+
+    /**
+     * Apply all pragmas to writer connection, page size goes first since it must be set before database is switched to WAL.
+     */
+    void applyWriter(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA page_size = " + pageSize);
+            statement.execute("PRAGMA journal_mode = " + journalMode.getValue());
+            statement.execute("PRAGMA synchronous = " + synchronous.getValue());
+        }
+        applyReader(connection);
+    }
+
+    /**
+     * Apply connection local pragmas, journal mode and sync are owned by writer.
+     */
+    void applyReader(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA cache_size = " + cacheSize);
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA temp_store = " + tempStore.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+CREATE TABLE tag_count
+(
+    tag   TEXT,
+    count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (tag)
+);
+
+-- backfill counts from existing rows, polydata_index is stored as "|tag1||tag2|"
+INSERT INTO tag_count(tag, count)
+WITH RECURSIVE split(tag, rest) AS (
+    SELECT '', polydata_index FROM data WHERE polydata_index IS NOT NULL
+    UNION ALL
+    SELECT substr(rest, 2, instr(substr(rest, 2), '|') - 1),
+           substr(rest, instr(substr(rest, 2), '|') + 2)
+    FROM split
+    WHERE rest <> ''
+)
+SELECT tag, count(*) FROM split WHERE tag <> '' GROUP BY tag;
+
+DELETE FROM internal WHERE _id = 'index';
@@ -0,0 +1,27 @@
+CREATE TABLE data_tag
+(
+    tag         TEXT,
+    update_date INTEGER,
+    _id_n       INTEGER,
+    PRIMARY KEY (tag, _id_n)
+) WITHOUT ROWID;
+
+CREATE INDEX data_tag_update_date ON data_tag (tag, update_date DESC, _id_n);
+CREATE INDEX data_tag_id ON data_tag (_id_n);
+
+-- backfill tag rows from existing data, polydata_index is stored as "|tag1||tag2|"
+INSERT OR IGNORE INTO data_tag(tag, update_date, _id_n)
+WITH RECURSIVE split(_id_n, update_date, tag, rest) AS (
+    SELECT _id_n, update_date, '', polydata_index FROM data WHERE polydata_index IS NOT NULL
+    UNION ALL
+    SELECT _id_n,
+           update_date,
+           substr(rest, 2, instr(substr(rest, 2), '|') - 1),
+           substr(rest, instr(substr(rest, 2), '|') + 2)
+    FROM split
+    WHERE rest <> ''
+)
+SELECT tag, update_date, _id_n FROM split WHERE tag <> '';
+
+-- leading wildcard LIKE queries are replaced by data_tag lookups
+DROP INDEX IF EXISTS polydata_index;
@@ -1,13 +1,32 @@
 package com.unidev.polydata4.sqlite;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unidev.polydata4.domain.BasicPoly;
+import com.unidev.polydata4.domain.BasicPolyList;
+import com.unidev.polydata4.domain.BasicPolyQuery;
+import com.unidev.polydata4.domain.InsertOptions;
+import com.unidev.polydata4.domain.InsertRequest;
+import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PolydataSqliteTest {
 
@@ -35,4 +54,209 @@ public class PolydataSqliteTest {
         assertEquals(v1, v2);
     }
 
+    @Test
+    void tagCountsFollowWrites() {
+        polydata.create("test");
+        polydata.insert("test", List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("1")).indexToPersist(Set.of("_date", "a")).build(),
+                InsertRequest.builder().data(BasicPoly.newPoly("2")).indexToPersist(Set.of("_date", "a", "b")).build()
+        ));
+        assertEquals(2L, polydata.indexData("test", "a").get().fetch("count", 0L));
+        assertEquals(1L, polydata.indexData("test", "b").get().fetch("count", 0L));
+
+        polydata.update("test", List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("2")).indexToPersist(Set.of("_date", "c")).build()
+        ));
+        assertEquals(1L, polydata.indexData("test", "a").get().fetch("count", 0L));
+        assertFalse(polydata.indexData("test", "b").isPresent());
+        assertEquals(1L, polydata.indexData("test", "c").get().fetch("count", 0L));
+
+        polydata.remove("test", Set.of("1", "2"));
+        assertFalse(polydata.index("test").get().containsKey("_date"));
+        assertFalse(polydata.indexData("test", "a").isPresent());
+    }
+
+    @Test
+    void queryByTagFollowsUpdates() {
+        polydata.create("test");
+        polydata.insert("test", List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("1").with("_update_date", 1L)).indexToPersist(Set.of("_date", "a")).build(),
+                InsertRequest.builder().data(BasicPoly.newPoly("2").with("_update_date", 2L)).indexToPersist(Set.of("_date", "a")).build()
+        ));
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index("a");
+        BasicPolyList list = polydata.query("test", query);
+        assertEquals(2, list.list().size());
+        assertEquals("2", list.list().get(0)._id());
+        assertEquals(2L, polydata.count("test", query));
+
+        polydata.update("test", List.of(
+                InsertRequest.builder().data(BasicPoly.newPoly("1")).indexToPersist(Set.of("_date", "b")).build()
+        ));
+        assertEquals(1L, polydata.count("test", query));
+        assertFalse(polydata.query("test", query).hasPoly("1"));
+
+        BasicPolyList dateList = polydata.query("test", new BasicPolyQuery());
+        assertEquals("1", dateList.list().get(0)._id());
+
+        polydata.remove("test", Set.of("2"));
+        assertEquals(0L, polydata.count("test", query));
+        assertTrue(polydata.query("test", query).list().isEmpty());
+    }
+
+    @Test
+    void randomQueryShufflesOrder() {
+        polydata.create("test");
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(InsertRequest.builder().data(BasicPoly.newPoly("poly-" + i)).indexToPersist(Set.of("_date")).build());
+        }
+        polydata.insert("test", requests);
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.queryType(BasicPolyQuery.QueryFunction.RANDOM);
+        query.withOption(PolydataSqlite.RANDOM_COUNT, 20);
+        // all polys are selected, only order of rows can differ between queries
+        Set<List<String>> orders = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            List<String> ids = new ArrayList<>();
+            polydata.query("test", query).list().forEach(poly -> ids.add(poly._id()));
+            assertEquals(20, ids.size());
+            orders.add(ids);
+        }
+        assertTrue(orders.size() > 1);
+    }
+
+    @Test
+    void parallelReadsDuringWrites() throws Exception {
+        polydata.setReadConnections(2);
+        polydata.create("test");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    polydata.insert("test", List.of(
+                            InsertRequest.builder().data(BasicPoly.newPoly("poly-" + i)).indexToPersist(Set.of("_date", "a")).build()
+                    ));
+                }
+            }));
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        BasicPolyQuery query = new BasicPolyQuery();
+                        query.index("a");
+                        polydata.query("test", query);
+                        polydata.count("test", query);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index("a");
+        assertEquals(50L, polydata.count("test", query));
+        assertEquals(50L, polydata.indexData("test", "a").get().fetch("count", 0L));
+        polydata.close();
+    }
+
+    @Test
+    void bulkLoad() {
+        polydata.setTuning(SqliteTuning.READ_HEAVY);
+        polydata.create("test");
+        polydata.startBulkLoad("test");
+        for (int i = 0; i < 10; i++) {
+            polydata.insert("test", InsertOptions.builder().skipIndex(true).build(), List.of(
+                    InsertRequest.builder().data(BasicPoly.newPoly("poly-" + i)).indexToPersist(Set.of("_date", "a")).build()
+            ));
+        }
+        polydata.finishBulkLoad("test");
+        polydata.recalculateIndex("test");
+
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index("a");
+        assertEquals(10L, polydata.count("test", query));
+        assertEquals(10L, polydata.indexData("test", "a").get().fetch("count", 0L));
+    }
+
+    @Test
+    void readInBucketedChunks() {
+        assertEquals(1, PolydataSqlite.inListSize(1));
+        assertEquals(8, PolydataSqlite.inListSize(2));
+        assertEquals(128, PolydataSqlite.inListSize(100));
+        assertEquals(512, PolydataSqlite.inListSize(1000));
+
+        polydata.create("test");
+        List<InsertRequest> requests = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 600; i++) {
+            requests.add(InsertRequest.builder().data(BasicPoly.newPoly("poly-" + i)).indexToPersist(Set.of("_date")).build());
+            ids.add("poly-" + i);
+        }
+        polydata.insert("test", requests);
+
+        assertEquals(600, polydata.read("test", ids).list().size());
+        assertEquals(3, polydata.read("test", Set.of("poly-1", "poly-2", "poly-3")).list().size());
+        assertEquals(600, polydata.remove("test", ids).list().size());
+        assertTrue(polydata.read("test", ids).list().isEmpty());
+    }
+
+    @Test
+    void streamReleasesConnection() {
+        polydata.setReadConnections(1);
+        polydata.create("test");
+        List<InsertRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            requests.add(InsertRequest.builder().data(BasicPoly.newPoly("poly-" + i)).indexToPersist(Set.of("_date")).build());
+        }
+        polydata.insert("test", requests);
+
+        try (Stream<BasicPoly> stream = polydata.stream("test", 8)) {
+            assertEquals(30, stream.count());
+        }
+        // single reader is back in the pool
+        assertEquals(30L, polydata.count("test", new BasicPolyQuery()));
+    }
+
+    @Test
+    void openDatabaseOfOlderSchema() throws Exception {
+        String url = "jdbc:sqlite:" + new File(root, "legacy.db.sqlite").getAbsolutePath();
+        Flyway.configure()
+                .dataSource(url, "", "")
+                .locations("polydata-sqlite")
+                .target("1.0.3")
+                .load()
+                .migrate();
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (Connection connection = DriverManager.getConnection(url);
+             PreparedStatement data = connection.prepareStatement(
+                     "INSERT INTO data(_id_n, _id, data, polydata_index, create_date, update_date) VALUES(?, ?, ?, ?, ?, ?)");
+             PreparedStatement internal = connection.prepareStatement(
+                     "INSERT INTO internal(_id, data, create_date, update_date) VALUES(?, ?, 0, 0)")) {
+            for (int i = 0; i < 3; i++) {
+                String id = "poly-" + i;
+                data.setLong(1, polydata.genHash(id));
+                data.setString(2, id);
+                data.setString(3, objectMapper.writeValueAsString(BasicPoly.newPoly(id)));
+                data.setString(4, i == 0 ? "|_date||a|" : "|_date|");
+                data.setLong(5, i);
+                data.setLong(6, i);
+                data.executeUpdate();
+            }
+            internal.setString(1, "config");
+            internal.setString(2, objectMapper.writeValueAsString(BasicPoly.newPoly("config").with("item_per_page", 10)));
+            internal.executeUpdate();
+        }
+
+        BasicPolyQuery query = new BasicPolyQuery();
+        query.index("a");
+        assertEquals(1, polydata.query("legacy", query).list().size());
+        assertEquals(1L, polydata.count("legacy", query));
+        assertEquals(3, polydata.query("legacy", new BasicPolyQuery()).list().size());
+        assertEquals(1L, polydata.indexData("legacy", "a").get().fetch("count", 0L));
+    }
+
 }